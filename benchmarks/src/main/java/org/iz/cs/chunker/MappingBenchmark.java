@@ -0,0 +1,156 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.iz.cs.chunker.benchmarks.BenchmarkFiles;
+import org.iz.cs.chunker.benchmarks.SyntheticMapping;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading a mapping of the size of a server mapping, with and without its binary cache,
+ * and finding the members of a class in it
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MappingBenchmark {
+
+    private static final String VERSION = "1.16.4";
+    private static final String CLASS = "net.minecraft.world.level.Level";
+    private static final String METHOD = "getChunk";
+
+    private Path directory;
+    private Path cachedMapping;
+    private Path textMapping;
+    private MappedByteBuffer textBuffer;
+    private FileChannel textChannel;
+
+    private Mapping fromText;
+    private Mapping fromCache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkFiles.createDirectory();
+        cachedMapping = directory.resolve("server_mapping_cached.txt");
+        SyntheticMapping.write(cachedMapping, SyntheticMapping.SERVER_CLASSES,
+                CLASS + " -> bqb:",
+                "    1:1:net.minecraft.world.level.chunk.LevelChunk " + METHOD + "(int,int) -> a");
+        textMapping = directory.resolve("server_mapping_text.txt");
+        Files.copy(cachedMapping, textMapping, StandardCopyOption.REPLACE_EXISTING);
+
+        // The first load creates the cache in the background, the second one uses it
+        fromText = Mapping.fromFile(cachedMapping, VERSION);
+        Path cache = directory.resolve("server_mapping_cached.bin");
+        while (!Files.exists(cache)) {
+            try {
+                Thread.sleep(10L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+        fromCache = Mapping.fromFile(cachedMapping, VERSION);
+
+        textChannel = FileChannel.open(textMapping, StandardOpenOption.READ);
+        textBuffer = textChannel.map(MapMode.READ_ONLY, 0, textChannel.size());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        textChannel.close();
+        BenchmarkFiles.delete(directory);
+    }
+
+    /**
+     * Indexes the mapping file and starts writing its binary cache in the background, as on the first start
+     * with a version
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 10)
+    @Measurement(iterations = 20)
+    public Mapping loadMappingWithoutCache() throws IOException {
+        // Takes microseconds, while loading takes many milliseconds
+        Files.deleteIfExists(directory.resolve("server_mapping_text.bin"));
+        return Mapping.fromFile(textMapping, VERSION);
+    }
+
+    /**
+     * Checks the cache against the size and modification time of the mapping file and opens it,
+     * as on every other start
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Mapping loadMappingWithCache() {
+        return Mapping.fromFile(cachedMapping, VERSION);
+    }
+
+    /**
+     * Only finds the classes in the text of the mapping, without reading or writing files
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public TextMappingIndex buildTextIndex() {
+        return TextMappingIndex.build(textBuffer.duplicate());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String methodKey() {
+        return MappingParser.methodKey(METHOD, "int", "int");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String getMethodFromText() {
+        return fromText.getMethod(CLASS, METHOD, "int", "int");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String getMethodFromCache() {
+        return fromCache.getMethod(CLASS, METHOD, "int", "int");
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.iz.cs.chunker.benchmarks.BenchmarkFiles;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Saving the progress: marking a chunk as done, which is done for every chunk, and the checkpoints,
+ * which write the marked chunks and the progress file to the disk. The files are written in a temporary directory.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ProgressBenchmark {
+
+    /**
+     * The area of a 16000 x 16000 blocks world
+     */
+    private static final int RADIUS = 500;
+
+    private Path directory;
+    private ProgressBitmap bitmap;
+    private ProgressCheckpointer checkpointer;
+    private List<GenerationProgress> progress;
+    private int x = -RADIUS;
+    private int z = -RADIUS;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkFiles.createDirectory();
+        bitmap = ProgressBitmap.open(directory.resolve("progress_overworld.bitmap"), -RADIUS, RADIUS, -RADIUS, RADIUS,
+                false);
+        checkpointer = new ProgressCheckpointer(() -> { }, 0, 1000);
+        checkpointer.start();
+
+        progress = new ArrayList<>();
+        for (String dimension : new String[] { "OVERWORLD", "NETHER", "END" }) {
+            GenerationProgress dimensionProgress = new GenerationProgress();
+            dimensionProgress.setDimension(dimension);
+            dimensionProgress.setX(RADIUS / 2);
+            dimensionProgress.setZ(-RADIUS / 2);
+            dimensionProgress.setRing(RADIUS / 2);
+            progress.add(dimensionProgress);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        checkpointer.close();
+        bitmap.close();
+        BenchmarkFiles.delete(directory);
+    }
+
+    /**
+     * What is done for each generated chunk
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void chunkDone() {
+        bitmap.set(x, z);
+        checkpointer.chunkGenerated();
+        if (++x > RADIUS) {
+            x = -RADIUS;
+            if (++z > RADIUS) {
+                z = -RADIUS;
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long resumeCount() {
+        return bitmap.cardinality();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void flushBitmap() {
+        bitmap.set(x, z);
+        bitmap.flush(bitmap.snapshot());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void writeProgressFile() {
+        Chunker.writeProgrssFile(directory, progress);
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Files used by the benchmarks, created in temporary directories
+ */
+public final class BenchmarkFiles {
+
+    private BenchmarkFiles() {
+    }
+
+    public static Path createDirectory() throws IOException {
+        return Files.createTempDirectory("chunker-benchmark");
+    }
+
+    public static void delete(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Writes a launcher manifest with the versions, newest first
+     */
+    public static void writeManifest(Path path, String... versions) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("{\"latest\":{\"release\":\"" + versions[0] + "\",\"snapshot\":\"" + versions[0] + "\"},");
+            writer.write("\"versions\":[");
+            for (int i = 0; i < versions.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write("{\"id\":\"" + versions[i] + "\",\"type\":\"release\",\"url\":\"https://localhost/"
+                        + versions[i] + ".json\",\"time\":\"2020-01-01T00:00:00+00:00\"}");
+            }
+            writer.write("]}");
+        }
+    }
+
+    /**
+     * Writes a jar with the class files of the classes, read from the class path
+     */
+    public static void writeJar(Path path, Class<?>... classes) throws IOException {
+        try (OutputStream os = Files.newOutputStream(path);
+                JarOutputStream jar = new JarOutputStream(os)) {
+            for (Class<?> cl : classes) {
+                addClass(jar, cl);
+            }
+        }
+    }
+
+    /**
+     * Adds the class file of the class, read from the class path
+     */
+    public static void addClass(JarOutputStream jar, Class<?> cl) throws IOException {
+        String name = cl.getName().replace('.', '/') + ".class";
+        jar.putNextEntry(new JarEntry(name));
+        try (InputStream is = cl.getClassLoader().getResourceAsStream(name)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) >= 0) {
+                jar.write(buffer, 0, read);
+            }
+        }
+        jar.closeEntry();
+    }
+
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.iz.cs.chunker.Chunker;
+import org.iz.cs.chunker.benchmarks.server.ChunkLog;
+import org.iz.cs.chunker.benchmarks.server.Simulation;
+
+/**
+ * Runs the chunker from start to end with the {@link StubServerJar}, each run in a new JVM and a new directory,
+ * and measures from the chunks the stub server saved:
+ * <ul>
+ * <li>throughput - chunks per second with one chunk and with many chunks in flight</li>
+ * <li>throttle - how close the rate is to max-generation-rate, which must be within {@value #THROTTLE_TOLERANCE}%</li>
+ * <li>resume - the JVM is halted in the middle of a run that saves progress, and the next run must generate
+ * every chunk that was not saved, and at most {@value #CHECKPOINT_CHUNKS} (checkpoint-chunks) and the chunks
+ * in flight of the others again</li>
+ * </ul>
+ * Run with {@code java -cp benchmarks.jar org.iz.cs.chunker.benchmarks.EndToEndBenchmark [scenario...]}.
+ * The output of each run is kept in chunker-N.log in the directory of the run.
+ */
+public final class EndToEndBenchmark {
+
+    private static final String THROUGHPUT = "throughput";
+    private static final String THROTTLE = "throttle";
+    private static final String RESUME = "resume";
+
+    private static final int RADIUS = 24;
+    private static final int IN_FLIGHT = 16;
+    private static final long TIMEOUT_MINUTES = 10L;
+    private static final double THROTTLE_TOLERANCE = 10;
+    private static final int CHECKPOINT_CHUNKS = 100;
+
+    private EndToEndBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> scenarios = args.length == 0
+                ? Arrays.asList(THROUGHPUT, THROTTLE, RESUME)
+                : Arrays.asList(args);
+        boolean passed = true;
+        for (String scenario : scenarios) {
+            switch (scenario) {
+            case THROUGHPUT:
+                passed &= throughput(1);
+                passed &= throughput(IN_FLIGHT);
+                break;
+            case THROTTLE:
+                passed &= throttle(200, 1);
+                passed &= throttle(200, IN_FLIGHT);
+                break;
+            case RESUME:
+                passed &= resume();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown scenario " + scenario
+                        + ". Possible values: " + THROUGHPUT + ", " + THROTTLE + ", " + RESUME);
+            }
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static boolean throughput(int inFlight) throws Exception {
+        Run run = new Run();
+        run.chunker.setProperty("max-chunks-in-flight", Integer.toString(inFlight));
+        int exitCode = run.execute();
+        Result result = run.result();
+        report("throughput, " + inFlight + " in flight", run, exitCode, result, true,
+                String.format("%.1f chunks/s", result.rate()));
+        return exitCode == 0 && result.isComplete();
+    }
+
+    private static boolean throttle(int rate, int inFlight) throws Exception {
+        Run run = new Run();
+        run.chunker.setProperty("max-generation-rate", Integer.toString(rate));
+        run.chunker.setProperty("max-chunks-in-flight", Integer.toString(inFlight));
+        int exitCode = run.execute();
+        Result result = run.result();
+        double error = (result.rate() - rate) / rate * 100;
+        boolean withinTolerance = Math.abs(error) <= THROTTLE_TOLERANCE;
+        report("throttle " + rate + "/s, " + inFlight + " in flight", run, exitCode, result, withinTolerance,
+                String.format("%.1f chunks/s, %+.1f%%, tolerance %.0f%%", result.rate(), error, THROTTLE_TOLERANCE));
+        return exitCode == 0 && result.isComplete() && withinTolerance;
+    }
+
+    private static boolean resume() throws Exception {
+        int haltAfter = 1000;
+        Run run = new Run();
+        run.chunker.setProperty("max-chunks-in-flight", Integer.toString(IN_FLIGHT));
+        run.chunker.setProperty("save-generation-progress", "true");
+        run.chunker.setProperty("checkpoint-interval", "0");
+        run.chunker.setProperty("checkpoint-chunks", Integer.toString(CHECKPOINT_CHUNKS));
+
+        run.server.put(Simulation.HALT_AFTER, Integer.toString(haltAfter));
+        int haltExitCode = run.execute();
+        run.server.remove(Simulation.HALT_AFTER);
+        int exitCode = run.execute();
+        Result result = run.result();
+
+        boolean progressDeleted = !Files.exists(run.directory.resolve("chunker").resolve("progress.json"));
+        // Chunks saved after the last checkpoint are generated again, the others must not be
+        int maxDuplicates = CHECKPOINT_CHUNKS + IN_FLIGHT;
+        boolean passed = haltExitCode == Simulation.HALT_EXIT_CODE && progressDeleted
+                && result.duplicates <= maxDuplicates;
+        report("resume after halt at " + haltAfter, run, exitCode, result, passed,
+                String.format("halted with %d, %d generated again (at most %d), progress %s", haltExitCode,
+                        result.duplicates, maxDuplicates, progressDeleted ? "deleted" : "not deleted"));
+        return exitCode == 0 && result.isComplete() && passed;
+    }
+
+    private static void report(String name, Run run, int exitCode, Result result, boolean passed,
+            String measurement) {
+        boolean ok = exitCode == 0 && result.isComplete() && passed;
+        System.out.println(String.format("%-32s %s %5d chunks, %d missing, %d outside the area, %s",
+                name, ok ? "OK    " : "FAILED", result.count, result.missing, result.outside, measurement));
+        if (!ok) {
+            System.out.println("  exit code " + exitCode + ", see the logs in " + run.directory);
+        }
+    }
+
+    /**
+     * A directory with the stub server and the configuration of the chunker, in which the chunker can be run
+     * several times
+     */
+    private static final class Run {
+
+        private final Path directory;
+        private final Path chunkLog;
+        private final Properties chunker = new Properties();
+        private final Map<String, String> server = new HashMap<>();
+        private int runs = 0;
+        private int lastRunFirstChunk = 0;
+
+        private Run() throws IOException {
+            directory = BenchmarkFiles.createDirectory();
+            chunkLog = directory.resolve("stub-chunks.log");
+            StubServerJar.write(directory.resolve("server.jar"));
+            StubServerJar.writeMapping(directory.resolve("server_mapping.txt"));
+            StubServerJar.writeManifest(directory.resolve("version_manifest.json"));
+
+            chunker.setProperty("x1", Integer.toString(-RADIUS));
+            chunker.setProperty("z1", Integer.toString(-RADIUS));
+            chunker.setProperty("x2", Integer.toString(RADIUS - 1));
+            chunker.setProperty("z2", Integer.toString(RADIUS - 1));
+            chunker.setProperty("dimension", "OVERWORLD");
+            chunker.setProperty("stop", "true");
+            chunker.setProperty("mapping", directory.resolve("server_mapping.txt").toString());
+            chunker.setProperty("manifest", directory.resolve("version_manifest.json").toString());
+            server.put(Simulation.CHUNK_LOG, chunkLog.toString());
+        }
+
+        /**
+         * Runs the chunker in a new JVM and waits for it to exit
+         */
+        private int execute() throws IOException, InterruptedException {
+            try (Writer writer = Files.newBufferedWriter(directory.resolve("chunker.properties"),
+                    StandardCharsets.UTF_8)) {
+                chunker.store(writer, null);
+            }
+            lastRunFirstChunk = 0;
+            if (Files.exists(chunkLog)) {
+                try (ChunkLog log = ChunkLog.open(chunkLog)) {
+                    lastRunFirstChunk = log.size();
+                }
+            }
+
+            List<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            command.add("-Xmx1G");
+            // The stub server is configured like the JVM of the benchmark, unless the scenario changes it
+            for (String name : System.getProperties().stringPropertyNames()) {
+                if (name.startsWith(Simulation.PREFIX) && !server.containsKey(name)) {
+                    command.add("-D" + name + "=" + System.getProperty(name));
+                }
+            }
+            for (Map.Entry<String, String> property : server.entrySet()) {
+                command.add("-D" + property.getKey() + "=" + property.getValue());
+            }
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(Chunker.class.getName());
+            command.add("server.jar");
+
+            File output = directory.resolve("chunker-" + ++runs + ".log").toFile();
+            Process process = new ProcessBuilder(command)
+                    .directory(directory.toFile())
+                    .redirectErrorStream(true)
+                    .redirectOutput(output)
+                    .start();
+            // Kept open, as the chunker reads the console until the server stops
+            OutputStream console = process.getOutputStream();
+            try {
+                if (!process.waitFor(TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                    process.destroyForcibly();
+                    throw new IllegalStateException("Chunker did not exit in " + TIMEOUT_MINUTES
+                            + " minutes. See " + output);
+                }
+            } finally {
+                console.close();
+            }
+            return process.exitValue();
+        }
+
+        /**
+         * The chunks saved by all runs so far. The rate is of the last run
+         */
+        private Result result() throws IOException {
+            try (ChunkLog log = ChunkLog.open(chunkLog)) {
+                return new Result(log, lastRunFirstChunk, -RADIUS, RADIUS - 1, -RADIUS, RADIUS - 1);
+            }
+        }
+    }
+
+    private static final class Result {
+
+        private final int count;
+        private int missing;
+        private int duplicates;
+        private int outside;
+        private final int lastRunCount;
+        private final long lastRunNanos;
+
+        private Result(ChunkLog log, int first, int x1, int x2, int z1, int z2) {
+            count = log.size();
+            int width = x2 - x1 + 1;
+            int[] generated = new int[width * (z2 - z1 + 1)];
+            for (int i = 0; i < count; i++) {
+                int x = log.getX(i);
+                int z = log.getZ(i);
+                if (x < x1 || x > x2 || z < z1 || z > z2) {
+                    outside++;
+                } else if (generated[(z - z1) * width + (x - x1)]++ > 0) {
+                    duplicates++;
+                }
+            }
+            for (int value : generated) {
+                if (value == 0) {
+                    missing++;
+                }
+            }
+            lastRunCount = count - first;
+            // Chunks are saved in batches, so they are not always in the order they were generated
+            long firstTime = Long.MAX_VALUE;
+            long lastTime = Long.MIN_VALUE;
+            for (int i = first; i < count; i++) {
+                firstTime = Math.min(firstTime, log.getTime(i));
+                lastTime = Math.max(lastTime, log.getTime(i));
+            }
+            lastRunNanos = lastRunCount > 1 ? lastTime - firstTime : 0;
+        }
+
+        private boolean isComplete() {
+            return missing == 0 && outside == 0;
+        }
+
+        /**
+         * Chunks per second from the first to the last chunk of the last run
+         */
+        private double rate() {
+            return lastRunNanos == 0 ? 0 : (lastRunCount - 1) * 1e9 / lastRunNanos;
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.benchmarks;
+
+/**
+ * Stands in for the level of a server. {@link #a} has the signature of the obfuscated getChunk method
+ */
+public class StubLevel {
+
+    private long chunks;
+
+    public Object a(int x, int z) {
+        chunks += x ^ z;
+        return null;
+    }
+
+    public long getChunks() {
+        return chunks;
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.iz.cs.chunker.benchmarks.server.ChunkLog;
+import org.iz.cs.chunker.benchmarks.server.ChunkPos;
+import org.iz.cs.chunker.benchmarks.server.ChunkStatus;
+import org.iz.cs.chunker.benchmarks.server.DedicatedServer;
+import org.iz.cs.chunker.benchmarks.server.Level;
+import org.iz.cs.chunker.benchmarks.server.Main;
+import org.iz.cs.chunker.benchmarks.server.MinecraftServer;
+import org.iz.cs.chunker.benchmarks.server.ResourceKey;
+import org.iz.cs.chunker.benchmarks.server.ServerChunkCache;
+import org.iz.cs.chunker.benchmarks.server.Simulation;
+import org.iz.cs.chunker.benchmarks.server.TicketType;
+
+/**
+ * A server jar made of the classes of the stub server, which have everything the chunker uses from a server,
+ * with the mapping and the launcher manifest that go with it. The chunker runs it like a server of
+ * {@link #VERSION}, and decorates its dedicated server class, without anything being downloaded.
+ * How long the stub server takes to generate a chunk is set by the system properties in {@link Simulation}.
+ */
+public final class StubServerJar {
+
+    public static final String VERSION = "1.16.4";
+
+    /**
+     * The versions the behaviors are registered for, newest first
+     */
+    public static final String[] MANIFEST_VERSIONS = { VERSION, "20w22a", "20w21a", "20w20b", "19w36a", "1.14.4" };
+
+    private static final Class<?>[] CLASSES = {
+            Main.class, MinecraftServer.class, DedicatedServer.class, Level.class, ServerChunkCache.class,
+            ResourceKey.class, ChunkPos.class, ChunkStatus.class, TicketType.class, Simulation.class, ChunkLog.class
+    };
+
+    private StubServerJar() {
+    }
+
+    public static void write(Path path) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, Main.class.getName());
+        try (OutputStream os = Files.newOutputStream(path);
+                JarOutputStream jar = new JarOutputStream(os, manifest)) {
+            jar.putNextEntry(new JarEntry("version.json"));
+            jar.write(("{\"id\":\"" + VERSION + "\",\"name\":\"" + VERSION + "\",\"release_target\":\"" + VERSION
+                    + "\",\"world_version\":2584,\"protocol_version\":754,\"pack_version\":6,\"stable\":true}")
+                    .getBytes(StandardCharsets.UTF_8));
+            jar.closeEntry();
+            for (Class<?> cl : CLASSES) {
+                BenchmarkFiles.addClass(jar, cl);
+            }
+        }
+    }
+
+    /**
+     * Writes the mapping of the stub server. Also has generated classes, so it is as large as a server mapping
+     */
+    public static void writeMapping(Path path) throws IOException {
+        String chunkPos = "net.minecraft.world.level.ChunkPos";
+        String chunkStatus = "net.minecraft.world.level.chunk.ChunkStatus";
+        String resourceKey = "net.minecraft.resources.ResourceKey";
+        String ticketType = "net.minecraft.server.level.TicketType";
+        String ticketParameters = "(" + ticketType + "," + chunkPos + ",int,java.lang.Object)";
+        SyntheticMapping.write(path, SyntheticMapping.SERVER_CLASSES,
+                "net.minecraft.server.MinecraftServer -> " + MinecraftServer.class.getName() + ":",
+                "    boolean isReady -> ready",
+                "    long[] tickTimes -> tickTimes",
+                "    1:1:net.minecraft.server.level.ServerLevel getLevel(" + resourceKey + ") -> getLevel",
+                "    1:1:boolean saveAllChunks(boolean,boolean,boolean) -> saveAllChunks",
+                "net.minecraft.server.dedicated.DedicatedServer -> " + DedicatedServer.class.getName() + ":",
+                "net.minecraft.world.level.Level -> " + Level.class.getName() + ":",
+                "    " + resourceKey + " OVERWORLD -> OVERWORLD",
+                "    " + resourceKey + " NETHER -> NETHER",
+                "    " + resourceKey + " END -> END",
+                "    1:1:net.minecraft.world.level.chunk.LevelChunk getChunk(int,int) -> getChunk",
+                "    1:1:net.minecraft.world.level.chunk.ChunkSource getChunkSource() -> getChunkSource",
+                resourceKey + " -> " + ResourceKey.class.getName() + ":",
+                "net.minecraft.server.level.ServerChunkCache -> " + ServerChunkCache.class.getName() + ":",
+                "    1:1:java.util.concurrent.CompletableFuture getChunkFutureMainThread(int,int," + chunkStatus
+                        + ",boolean) -> getChunkFutureMainThread",
+                "    1:1:void addRegionTicket" + ticketParameters + " -> addRegionTicket",
+                "    1:1:void removeRegionTicket" + ticketParameters + " -> removeRegionTicket",
+                chunkStatus + " -> " + ChunkStatus.class.getName() + ":",
+                "    " + chunkStatus + " FULL -> FULL",
+                chunkPos + " -> " + ChunkPos.class.getName() + ":",
+                ticketType + " -> " + TicketType.class.getName() + ":",
+                "    1:1:" + ticketType + " create(java.lang.String,java.util.Comparator) -> create");
+    }
+
+    public static void writeManifest(Path path) throws IOException {
+        BenchmarkFiles.writeManifest(path, MANIFEST_VERSIONS);
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Writes a ProGuard mapping file with the size and the shape of a real server mapping, so that the
+ * mapping can be benchmarked without downloading one. The content is the same for the same arguments.
+ */
+public final class SyntheticMapping {
+
+    /**
+     * About the number of classes, including inner classes, of a 1.16 server mapping,
+     * which is about 8 MB
+     */
+    public static final int SERVER_CLASSES = 7000;
+
+    private static final String[] TYPES = {
+            "int", "boolean", "long", "float", "double", "void", "java.lang.String", "java.lang.Object",
+            "java.util.List", "java.util.Map", "java.util.function.Supplier", "net.minecraft.core.BlockPos"
+    };
+    private static final String[] PACKAGES = {
+            "net.minecraft.world.level", "net.minecraft.world.level.chunk", "net.minecraft.world.entity",
+            "net.minecraft.server.level", "net.minecraft.network.protocol.game", "net.minecraft.util",
+            "net.minecraft.core", "net.minecraft.world.item", "net.minecraft.world.level.block"
+    };
+
+    private SyntheticMapping() {
+    }
+
+    /**
+     * @param classes number of generated classes
+     * @param lines lines written before the generated classes, for classes that must be found in the mapping
+     */
+    public static void write(Path path, int classes, String... lines) throws IOException {
+        Random random = new Random(classes);
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("# {\"fileName\":\"server.txt\",\"id\":\"sourceFile\"}\n");
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+            for (int i = 0; i < classes; i++) {
+                String packageName = PACKAGES[random.nextInt(PACKAGES.length)];
+                writer.write(packageName + ".Class" + i + " -> " + obfuscated(i) + ":\n");
+                int fields = 2 + random.nextInt(16);
+                for (int j = 0; j < fields; j++) {
+                    writer.write("    " + type(random) + " field" + j + " -> " + obfuscated(j) + "\n");
+                }
+                int methods = 4 + random.nextInt(30);
+                int line = 1;
+                for (int j = 0; j < methods; j++) {
+                    int length = 1 + random.nextInt(20);
+                    writer.write("    " + line + ":" + (line + length) + ":" + type(random) + " method" + j
+                            + "(" + parameters(random) + ") -> " + obfuscated(j) + "\n");
+                    line += length + 1;
+                }
+            }
+        }
+    }
+
+    private static String type(Random random) {
+        return TYPES[random.nextInt(TYPES.length)];
+    }
+
+    private static String parameters(Random random) {
+        int count = random.nextInt(4);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(type(random));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Short names like the ones of the obfuscated server: a, b, ..., z, aa, ab, ...
+     */
+    private static String obfuscated(int index) {
+        StringBuilder builder = new StringBuilder();
+        int value = index;
+        do {
+            builder.insert(0, (char) ('a' + value % 26));
+            value = value / 26 - 1;
+        } while (value >= 0);
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.benchmarks.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The chunks saved by the stub server, in the order they were saved, with the time each one was generated.
+ * The file is memory-mapped, so the chunks recorded before the JVM is halted or killed are kept.
+ * Runs of the server on the same file append to it.
+ */
+public final class ChunkLog implements Closeable {
+
+    private static final int HEADER_SIZE = 8;
+    private static final int ENTRY_SIZE = 16;
+    private static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private int size;
+
+    private ChunkLog(FileChannel channel, MappedByteBuffer buffer, int capacity) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.size = buffer.getInt(0);
+    }
+
+    public static ChunkLog open(Path path) throws IOException {
+        return open(path, DEFAULT_CAPACITY);
+    }
+
+    public static ChunkLog open(Path path, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long fileSize = Math.max(channel.size(), HEADER_SIZE + (long) capacity * ENTRY_SIZE);
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, fileSize);
+            return new ChunkLog(channel, buffer, (int) ((fileSize - HEADER_SIZE) / ENTRY_SIZE));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of chunks recorded, including this one
+     */
+    public synchronized int add(int x, int z, long time) {
+        if (size == capacity) {
+            throw new IllegalStateException("Chunk log is full");
+        }
+        int position = HEADER_SIZE + size * ENTRY_SIZE;
+        buffer.putInt(position, x);
+        buffer.putInt(position + 4, z);
+        buffer.putLong(position + 8, time);
+        size++;
+        buffer.putInt(0, size);
+        return size;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int getX(int index) {
+        return buffer.getInt(HEADER_SIZE + index * ENTRY_SIZE);
+    }
+
+    public synchronized int getZ(int index) {
+        return buffer.getInt(HEADER_SIZE + index * ENTRY_SIZE + 4);
+    }
+
+    /**
+     * {@link System#nanoTime} when the chunk was generated. Can only be compared with times of the same run
+     */
+    public synchronized long getTime(int index) {
+        return buffer.getLong(HEADER_SIZE + index * ENTRY_SIZE + 8);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    public static void delete(Path path) throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.benchmarks.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stands in for net.minecraft.server.dedicated.DedicatedServer. Reads commands from the console,
+ * of which only "stop" is supported
+ */
+public class DedicatedServer extends MinecraftServer {
+
+    public DedicatedServer() throws IOException {
+        super();
+    }
+
+    @Override
+    void start() {
+        Thread console = new Thread(this::readCommands, "Server console handler");
+        console.setDaemon(true);
+        console.start();
+        super.start();
+    }
+
+    private void readCommands() {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if ("stop".equals(line.trim())) {
+                    halt();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
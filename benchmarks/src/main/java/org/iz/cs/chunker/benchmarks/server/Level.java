@@ -0,0 +1,49 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.benchmarks.server;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Stands in for net.minecraft.world.level.Level. Like on the server, a chunk requested from another thread
+ * is generated on the server thread, which waits for it
+ */
+public class Level {
+
+    public static final ResourceKey OVERWORLD = new ResourceKey("overworld");
+    public static final ResourceKey NETHER = new ResourceKey("the_nether");
+    public static final ResourceKey END = new ResourceKey("the_end");
+
+    private final MinecraftServer server;
+    private final ServerChunkCache chunkSource;
+
+    Level(MinecraftServer server) {
+        this.server = server;
+        this.chunkSource = new ServerChunkCache(server);
+    }
+
+    public Object getChunk(int x, int z) {
+        if (server.isServerThread()) {
+            return chunkSource.generateChunk(x, z);
+        }
+        return CompletableFuture.supplyAsync(() -> chunkSource.generateChunk(x, z), server).join();
+    }
+
+    public ServerChunkCache getChunkSource() {
+        return chunkSource;
+    }
+
+}
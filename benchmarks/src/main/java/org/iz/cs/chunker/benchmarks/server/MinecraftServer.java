@@ -0,0 +1,194 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.benchmarks.server;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stands in for net.minecraft.server.MinecraftServer. Ticks 20 times per second on the server thread
+ * and runs the tasks given to it between ticks, which includes generating the chunks requested by other threads.
+ * The time spent in each tick, including its tasks, is recorded in {@link #tickTimes} like the server does.
+ * Generated chunks are recorded in the {@link ChunkLog} only when they are saved, by saveAllChunks or when
+ * the server stops, so the chunks generated since the last save are lost when the JVM is halted.
+ */
+public abstract class MinecraftServer implements Executor, Runnable {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50L);
+
+    private boolean ready = false;
+    private final long[] tickTimes = new long[100];
+    private volatile boolean running = true;
+    private final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+    private final Map<ResourceKey, Level> levels = new HashMap<>();
+    private final AtomicInteger workerCount = new AtomicInteger();
+    private final ExecutorService workers;
+    private final AtomicInteger tickets = new AtomicInteger();
+    private final ChunkLog chunkLog;
+    /**
+     * x, z and the time each chunk generated since the last save was generated
+     */
+    private final List<long[]> unsaved = new ArrayList<>();
+    private final AtomicInteger generated = new AtomicInteger();
+    private Thread serverThread;
+
+    protected MinecraftServer() throws IOException {
+        this.workers = Executors.newFixedThreadPool(Simulation.workers, r -> {
+            Thread t = new Thread(r, "Worker-Main-" + workerCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.chunkLog = ChunkLog.open(Paths.get(Simulation.chunkLog));
+        for (ResourceKey dimension : new ResourceKey[] { Level.OVERWORLD, Level.NETHER, Level.END }) {
+            levels.put(dimension, new Level(this));
+        }
+    }
+
+    void start() {
+        serverThread = new Thread(this, "Server thread");
+        serverThread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            Thread.sleep(Simulation.startupMillis);
+        } catch (InterruptedException e) {
+            return;
+        }
+        System.out.println("Done (" + Simulation.startupMillis / 1000d + "s)! For help, type \"help\"");
+        ready = true;
+
+        int tick = 0;
+        long nextTick = System.nanoTime();
+        while (running) {
+            long start = System.nanoTime();
+            Simulation.spin(Simulation.tickNanos);
+            long busy = System.nanoTime() - start;
+            nextTick += TICK_NANOS;
+            try {
+                Runnable task;
+                while ((task = tasks.poll(nextTick - System.nanoTime(), TimeUnit.NANOSECONDS)) != null) {
+                    busy += runTask(task);
+                    if (System.nanoTime() - nextTick >= 0) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            // Only the time spent working, not waiting for the next tick
+            tickTimes[tick++ % tickTimes.length] = busy;
+            long end = System.nanoTime();
+            if (end - nextTick > 0) {
+                // Missed ticks are not caught up on, like on the server
+                nextTick = end;
+            }
+        }
+
+        System.out.println("Stopping server");
+        ready = false;
+        workers.shutdown();
+        saveAllChunks(false, true, false);
+        try {
+            chunkLog.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (tickets.get() != 0) {
+            System.out.println("Tickets that were not removed: " + tickets.get());
+        }
+    }
+
+    /**
+     * @return nanoseconds the task took
+     */
+    private static long runTask(Runnable task) {
+        long start = System.nanoTime();
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+        return System.nanoTime() - start;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+    }
+
+    void halt() {
+        running = false;
+    }
+
+    boolean isServerThread() {
+        return Thread.currentThread() == serverThread;
+    }
+
+    Executor getWorkers() {
+        return workers;
+    }
+
+    void addTicket() {
+        tickets.incrementAndGet();
+    }
+
+    void removeTicket() {
+        tickets.decrementAndGet();
+    }
+
+    /**
+     * Keeps the chunk until it is saved and halts the JVM if it was configured to halt after this many chunks
+     */
+    void chunkGenerated(int x, int z) {
+        long time = System.nanoTime();
+        synchronized (unsaved) {
+            unsaved.add(new long[] { x, z, time });
+        }
+        if (Simulation.haltAfter > 0 && generated.incrementAndGet() >= Simulation.haltAfter) {
+            System.out.println("Halting after " + Simulation.haltAfter + " chunks");
+            Runtime.getRuntime().halt(Simulation.HALT_EXIT_CODE);
+        }
+    }
+
+    public Level getLevel(ResourceKey dimension) {
+        return levels.get(dimension);
+    }
+
+    private boolean saveAllChunks(boolean suppressLogs, boolean flush, boolean forced) {
+        Simulation.spin(TimeUnit.MILLISECONDS.toNanos(10L));
+        synchronized (unsaved) {
+            for (long[] chunk : unsaved) {
+                chunkLog.add((int) chunk[0], (int) chunk[1], chunk[2]);
+            }
+            unsaved.clear();
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.benchmarks.server;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Stands in for net.minecraft.server.level.ServerChunkCache. Chunks requested asynchronously are generated
+ * by the worker threads, so the server thread is free to tick in the meantime
+ */
+public class ServerChunkCache {
+
+    private final MinecraftServer server;
+
+    ServerChunkCache(MinecraftServer server) {
+        this.server = server;
+    }
+
+    Object generateChunk(int x, int z) {
+        Object chunk = Simulation.generateChunk(x, z);
+        server.chunkGenerated(x, z);
+        return chunk;
+    }
+
+    private CompletableFuture<Object> getChunkFutureMainThread(int x, int z, ChunkStatus status, boolean load) {
+        checkServerThread();
+        return CompletableFuture.supplyAsync(() -> generateChunk(x, z), server.getWorkers());
+    }
+
+    private <T> void addRegionTicket(TicketType<T> type, ChunkPos pos, int distance, T key) {
+        checkServerThread();
+        server.addTicket();
+    }
+
+    private <T> void removeRegionTicket(TicketType<T> type, ChunkPos pos, int distance, T key) {
+        checkServerThread();
+        server.removeTicket();
+    }
+
+    private void checkServerThread() {
+        if (!server.isServerThread()) {
+            throw new IllegalStateException("Not called on the server thread");
+        }
+    }
+
+}
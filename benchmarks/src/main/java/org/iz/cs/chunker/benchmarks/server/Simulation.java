@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.benchmarks.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The cost of generating one chunk in the stub server, read from system properties of the JVM
+ * that runs the server:
+ * <ul>
+ * <li>{@value #CPU_MICROS} - microseconds of CPU work</li>
+ * <li>{@value #LATENCY_MICROS} - microseconds of waiting, like for disk I/O</li>
+ * <li>{@value #ALLOCATION_BYTES} - bytes allocated, kept until a few hundred more chunks are generated</li>
+ * <li>{@value #TICK_MICROS} - microseconds of CPU work of each tick, without chunks</li>
+ * <li>{@value #STARTUP_MILLIS} - milliseconds the server takes to start</li>
+ * <li>{@value #WORKERS} - threads that generate the chunks requested asynchronously</li>
+ * <li>{@value #HALT_AFTER} - number of generated chunks after which the JVM is halted, like when it crashes.
+ * The chunks that were not saved are lost</li>
+ * <li>{@value #CHUNK_LOG} - file in which the saved chunks are recorded</li>
+ * </ul>
+ */
+public final class Simulation {
+
+    public static final String PREFIX = "chunker.stub.";
+    public static final String CPU_MICROS = "chunker.stub.cpu-micros";
+    public static final String LATENCY_MICROS = "chunker.stub.latency-micros";
+    public static final String ALLOCATION_BYTES = "chunker.stub.allocation-bytes";
+    public static final String TICK_MICROS = "chunker.stub.tick-micros";
+    public static final String STARTUP_MILLIS = "chunker.stub.startup-millis";
+    public static final String WORKERS = "chunker.stub.workers";
+    public static final String HALT_AFTER = "chunker.stub.halt-after";
+    public static final String CHUNK_LOG = "chunker.stub.chunk-log";
+
+    /**
+     * Exit code of the JVM when it is halted after {@link #HALT_AFTER} chunks
+     */
+    public static final int HALT_EXIT_CODE = 86;
+
+    static final long cpuNanos = TimeUnit.MICROSECONDS.toNanos(Long.getLong(CPU_MICROS, 200L));
+    static final long latencyNanos = TimeUnit.MICROSECONDS.toNanos(Long.getLong(LATENCY_MICROS, 500L));
+    static final int allocationBytes = Integer.getInteger(ALLOCATION_BYTES, 64 * 1024);
+    static final long tickNanos = TimeUnit.MICROSECONDS.toNanos(Long.getLong(TICK_MICROS, 2000L));
+    static final long startupMillis = Long.getLong(STARTUP_MILLIS, 500L);
+    static final int workers = Integer.getInteger(WORKERS, Runtime.getRuntime().availableProcessors());
+    static final long haltAfter = Long.getLong(HALT_AFTER, 0L);
+    static final String chunkLog = System.getProperty(CHUNK_LOG, "stub-chunks.log");
+
+    private static final Object[] recentChunks = new Object[256];
+    private static volatile long sink;
+
+    private Simulation() {
+    }
+
+    /**
+     * @return the generated chunk
+     */
+    static Object generateChunk(int x, int z) {
+        spin(cpuNanos);
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+        byte[] chunk = new byte[allocationBytes];
+        if (chunk.length > 0) {
+            chunk[0] = (byte) x;
+            chunk[chunk.length - 1] = (byte) z;
+        }
+        // Kept for a while, like the chunks a server keeps loaded
+        recentChunks[(x * 31 + z) & (recentChunks.length - 1)] = chunk;
+        return chunk;
+    }
+
+    /**
+     * Keeps the CPU busy for the time
+     */
+    static void spin(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        long end = System.nanoTime() + nanos;
+        long value = sink;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 100; i++) {
+                value = value * 6364136223846793005L + 1442695040888963407L;
+            }
+        }
+        sink = value;
+    }
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.benchmarks.server;
+
+import java.util.Comparator;
+
+/**
+ * Stands in for net.minecraft.server.level.TicketType
+ */
+public final class TicketType<T> {
+
+    private final String name;
+
+    private TicketType(String name) {
+        this.name = name;
+    }
+
+    public static <T> TicketType<T> create(String name, Comparator<T> comparator) {
+        return new TicketType<>(name);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.io;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading commands from the {@link InputHandler}, like the server does, when they are enqueued by the chunker
+ * and when they are typed in the console, which is a pipe here
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class InputHandlerBenchmark {
+
+    private static final String COMMAND = "list\n";
+    private static final byte[] COMMAND_BYTES = COMMAND.getBytes(StandardCharsets.UTF_8);
+
+    private PipedOutputStream console;
+    private InputHandler handler;
+    private byte[] buffer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        console = new PipedOutputStream();
+        // Buffered like System.in, which supports mark and reset
+        handler = new InputHandler(new BufferedInputStream(new PipedInputStream(console, 1 << 16)));
+        buffer = new byte[8192];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        console.close();
+    }
+
+    @Benchmark
+    public int readEnqueued() throws IOException {
+        handler.enqueue(COMMAND, StandardCharsets.UTF_8, false);
+        return handler.read(buffer, 0, buffer.length);
+    }
+
+    @Benchmark
+    public int readConsole() throws IOException {
+        console.write(COMMAND_BYTES);
+        console.flush();
+        int read = 0;
+        while (read < COMMAND_BYTES.length) {
+            read += handler.read(buffer, read, buffer.length - read);
+        }
+        return read;
+    }
+
+}
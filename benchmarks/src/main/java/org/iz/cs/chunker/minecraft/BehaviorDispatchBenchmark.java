@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.minecraft;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.iz.cs.chunker.Configuration;
+import org.iz.cs.chunker.Mapping;
+import org.iz.cs.chunker.benchmarks.BenchmarkFiles;
+import org.iz.cs.chunker.benchmarks.StubServerJar;
+import org.iz.cs.chunker.benchmarks.SyntheticMapping;
+import org.iz.cs.chunker.minecraft.BehaviorManager.BehaviorName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Calling a behavior through its {@link BehaviorName}, which looks it up in the {@link BehaviorManager}
+ * on each call, compared to calling the resolved behavior. Also selecting the behaviors for a version.
+ * The versions are read from a launcher manifest written for the benchmark, so nothing is downloaded,
+ * but the index of the manifest is written in the chunker directory of the working directory.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BehaviorDispatchBenchmark {
+
+    private static final String VERSION = StubServerJar.VERSION;
+    private static final String DIMENSION = "OVERWORLD";
+
+    private Path directory;
+    private ClassCache classCache;
+    private BehaviorManager behaviorManager;
+    private Function<Object, Object> mapDimension;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws IOException {
+        directory = BenchmarkFiles.createDirectory();
+        Path manifest = directory.resolve("version_manifest.json");
+        StubServerJar.writeManifest(manifest);
+        Configuration.manifest = manifest.toString();
+        Configuration.defaultBehaviors = false;
+        // Otherwise the index of the manifest is kept in the chunker directory of the working directory
+        Mapping.getVersionIndex(directory.resolve("version_manifest.idx"));
+
+        Path mappingPath = directory.resolve("server_mapping.txt");
+        SyntheticMapping.write(mappingPath, 100);
+        Mapping mapping = Mapping.fromFile(mappingPath, VERSION);
+
+        // Behaviors are only created, not bootstrapped, which needs a server
+        classCache = new ClassCache(mapping, null);
+        behaviorManager = new BehaviorManager(VERSION, classCache, mapping, null);
+        behaviorManager.resolve(EnumSet.noneOf(BehaviorName.class));
+        mapDimension = behaviorManager.get(BehaviorName.MAP_DIMENSION);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(directory);
+    }
+
+    @Benchmark
+    public Object applyByName() {
+        return BehaviorName.MAP_DIMENSION.apply(DIMENSION, behaviorManager);
+    }
+
+    @Benchmark
+    public Object applyResolved() {
+        return mapDimension.apply(DIMENSION);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public BehaviorManager resolve() {
+        BehaviorManager result = new BehaviorManager(VERSION, classCache, classCache.getMapping(), null);
+        result.resolve(EnumSet.allOf(BehaviorName.class));
+        return result;
+    }
+
+}
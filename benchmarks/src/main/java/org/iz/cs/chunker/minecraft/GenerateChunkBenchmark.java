@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.minecraft;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.iz.cs.chunker.JarClassLoader;
+import org.iz.cs.chunker.Mapping;
+import org.iz.cs.chunker.benchmarks.BenchmarkFiles;
+import org.iz.cs.chunker.benchmarks.StubLevel;
+import org.iz.cs.chunker.benchmarks.SyntheticMapping;
+import org.iz.cs.chunker.minecraft.impl.GenerateChunk;
+import org.iz.cs.chunker.minecraft.impl.GenerateChunk.ChunkGenerator;
+import org.iz.cs.chunker.minecraft.impl.GenerateChunk.GenerateChunkArguments;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The overhead of passing the chunk coordinates to {@link GenerateChunk}: a new argument object for each chunk,
+ * one argument object that is reused, and the {@link ChunkGenerator} that takes the coordinates directly.
+ * The level is a {@link StubLevel} loaded from a jar by a {@link JarClassLoader}, like the level of a server.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GenerateChunkBenchmark {
+
+    private static final String VERSION = "1.16.4";
+    private static final String DIMENSION = "OVERWORLD";
+
+    private Path directory;
+    private JarClassLoader loader;
+    private Object level;
+    private GenerateChunk.I_1_14_4 behavior;
+    private ChunkGenerator generator;
+    private GenerateChunkArguments arguments;
+    private int x;
+    private int z;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = BenchmarkFiles.createDirectory();
+        Path jar = directory.resolve("server.jar");
+        BenchmarkFiles.writeJar(jar, StubLevel.class);
+        Path mappingPath = directory.resolve("server_mapping.txt");
+        SyntheticMapping.write(mappingPath, 100,
+                Constants.LEVEL_CN + " -> " + StubLevel.class.getName() + ":",
+                "    1:1:net.minecraft.world.level.chunk.ChunkAccess " + Constants.GET_CHUNK_M + "(int,int) -> a");
+        Mapping mapping = Mapping.fromFile(mappingPath, VERSION);
+
+        loader = new JarClassLoader(jar.toString());
+        level = loader.loadClass(StubLevel.class.getName()).getConstructor().newInstance();
+        behavior = new FixedLevel(level);
+        // Called through Behavior, where they are visible to this package
+        Behavior<?, ?> created = behavior;
+        created.init(null, new ClassCache(mapping, loader), mapping, null);
+        created.bootstrap();
+        generator = behavior;
+        arguments = new GenerateChunkArguments(DIMENSION, 0, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        loader.close();
+        BenchmarkFiles.delete(directory);
+    }
+
+    @Benchmark
+    public Object applyNewArguments() {
+        return behavior.apply(new GenerateChunkArguments(DIMENSION, x++, z++));
+    }
+
+    @Benchmark
+    public Object applyReusedArguments() {
+        arguments.setX(x++);
+        arguments.setZ(z++);
+        return behavior.apply(arguments);
+    }
+
+    @Benchmark
+    public void generate() {
+        generator.generate(level, x++, z++);
+    }
+
+    /**
+     * Returns the level without the behavior that finds the level, which needs a running server
+     */
+    private static final class FixedLevel extends GenerateChunk.I_1_14_4 {
+
+        private final Object level;
+
+        private FixedLevel(Object level) {
+            this.level = level;
+        }
+
+        @Override
+        public Object getLevel(String dimension) {
+            return level;
+        }
+    }
+
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * A mapping saved in a compact binary file, read through a memory-mapped buffer.
+ * <p>
+ * The file has a header, a hash table of the classes by original name, a table of the members of
+ * all classes and a pool with each distinct name stored once. The tables are checked when the file is
+ * opened, the names are read when a class is requested. The header has the version and the size,
+ * modification time and hash of the mapping file it was made from, so a file made from a different
+ * mapping is not used.
+ */
+final class BinaryMappingIndex implements MappingIndex {
+
+    private static final int MAGIC = 0x43484B4D;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 56;
+    private static final int CLASS_SIZE = 20;
+    private static final int MEMBER_SIZE = 8;
+    private static final int EMPTY = -1;
+
+    private final ByteBuffer buffer;
+    private final int classMask;
+    private final int classTable;
+    private final int memberTable;
+    private final int stringPool;
+    private final Map<String, Map<String, String>> classes = new ConcurrentHashMap<>();
+
+    private BinaryMappingIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.classMask = buffer.getInt(24) - 1;
+        this.classTable = buffer.getInt(28);
+        this.memberTable = buffer.getInt(32);
+        this.stringPool = buffer.getInt(36);
+    }
+
+    /**
+     * The hash of the mapping is computed only if the size matches and the modification time does not,
+     * for example when the same mapping was downloaded again. The modification time in the file is then updated
+     * @return null if there is no file, it was made from a different mapping or it is damaged
+     */
+    static BinaryMappingIndex open(Path path, String versionId, long mappingSize, long mappingModified,
+            LongSupplier mappingHash) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC
+                    || buffer.getInt(4) != FORMAT_VERSION
+                    || buffer.getLong(8) != mappingSize
+                    || !isValid(buffer)) {
+                return null;
+            }
+            BinaryMappingIndex result = new BinaryMappingIndex(buffer);
+            if (!result.stringEquals(buffer.getInt(40), versionId)) {
+                return null;
+            }
+            if (buffer.getLong(48) != mappingModified) {
+                if (buffer.getLong(16) != mappingHash.getAsLong()) {
+                    return null;
+                }
+                updateModified(path, mappingModified);
+            }
+            return result;
+        } catch (IOException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Saves all classes of the index. The file is replaced only once it is completely written and forced to the disk
+     */
+    static void write(Path path, String versionId, long mappingSize, long mappingModified, long mappingHash,
+            TextMappingIndex index) throws IOException {
+        Writer writer = new Writer();
+        int versionRef = writer.intern(versionId);
+        index.forEachClass(writer::addClass);
+
+        int capacity = Integer.highestOneBit(Math.max(16, writer.classCount * 2 - 1)) << 1;
+        int[] slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        for (int i = 0; i < writer.classCount; i++) {
+            int slot = mix(writer.classes[i * 5]) & (capacity - 1);
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            slots[slot] = i;
+        }
+
+        long classTable = HEADER_SIZE;
+        long memberTable = classTable + (long) capacity * CLASS_SIZE;
+        long stringPool = memberTable + writer.members.size();
+        long length = stringPool + writer.strings.size();
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Mapping is too large to cache");
+        }
+
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryPath,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.CREATE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(mappingSize);
+            out.writeLong(mappingHash);
+            out.writeInt(capacity);
+            out.writeInt((int) classTable);
+            out.writeInt((int) memberTable);
+            out.writeInt((int) stringPool);
+            out.writeInt(versionRef);
+            out.writeInt((int) length);
+            out.writeLong(mappingModified);
+            for (int slot : slots) {
+                if (slot == EMPTY) {
+                    out.writeInt(0);
+                    out.writeInt(EMPTY);
+                    out.writeInt(0);
+                    out.writeInt(0);
+                    out.writeInt(0);
+                } else {
+                    for (int i = 0; i < 5; i++) {
+                        out.writeInt(writer.classes[slot * 5 + i]);
+                    }
+                }
+            }
+            writer.members.writeTo(out);
+            writer.strings.writeTo(out);
+            out.flush();
+            channel.force(true);
+        }
+        try {
+            Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Checks that the tables are where the header says and that all names they refer to are in the file
+     */
+    private static boolean isValid(ByteBuffer buffer) {
+        int capacity = buffer.getInt(24);
+        long classTable = buffer.getInt(28);
+        long memberTable = buffer.getInt(32);
+        long stringPool = buffer.getInt(36);
+        if (buffer.getInt(44) != buffer.capacity()
+                || capacity <= 0
+                || Integer.bitCount(capacity) != 1
+                || classTable != HEADER_SIZE
+                || memberTable != classTable + (long) capacity * CLASS_SIZE
+                || stringPool < memberTable
+                || (stringPool - memberTable) % MEMBER_SIZE != 0
+                || stringPool > buffer.capacity()
+                || !isString(buffer, buffer.getInt(40))) {
+            return false;
+        }
+        long memberCount = (stringPool - memberTable) / MEMBER_SIZE;
+        for (int slot = 0; slot < capacity; slot++) {
+            int entry = (int) classTable + slot * CLASS_SIZE;
+            if (buffer.getInt(entry + 4) == EMPTY) {
+                continue;
+            }
+            int start = buffer.getInt(entry + 12);
+            int count = buffer.getInt(entry + 16);
+            if (!isString(buffer, buffer.getInt(entry + 4))
+                    || !isString(buffer, buffer.getInt(entry + 8))
+                    || start < 0
+                    || count < 0
+                    || (long) start + count > memberCount) {
+                return false;
+            }
+        }
+        for (int member = (int) memberTable; member < stringPool; member += 4) {
+            if (!isString(buffer, buffer.getInt(member))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isString(ByteBuffer buffer, int ref) {
+        long position = (long) buffer.getInt(36) + ref;
+        if (ref < 0 || position + 2 > buffer.capacity()) {
+            return false;
+        }
+        return position + 2 + (buffer.getShort((int) position) & 0xFFFF) <= buffer.capacity();
+    }
+
+    private static void updateModified(Path path, long mappingModified) {
+        ByteBuffer modified = ByteBuffer.allocate(8);
+        modified.putLong(0, mappingModified);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(modified, 48);
+        } catch (IOException e) {
+            // The hash is checked again next time
+        }
+    }
+
+    @Override
+    public Map<String, String> getClass(String originalClass) {
+        Map<String, String> result = classes.get(originalClass);
+        if (result == null) {
+            int entry = find(originalClass);
+            if (entry < 0) {
+                return null;
+            }
+            result = new HashMap<>();
+            result.put(MappingParser.NAME, string(buffer.getInt(entry + 8)));
+            int start = buffer.getInt(entry + 12);
+            int count = buffer.getInt(entry + 16);
+            for (int i = 0; i < count; i++) {
+                int member = memberTable + (start + i) * MEMBER_SIZE;
+                result.put(string(buffer.getInt(member)), string(buffer.getInt(member + 4)));
+            }
+            classes.put(originalClass, result);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean contains(String originalClass) {
+        return classes.containsKey(originalClass) || find(originalClass) >= 0;
+    }
+
+    /**
+     * @return position of the entry of the class in the class table, -1 if not found
+     */
+    private int find(String originalClass) {
+        int hash = originalClass.hashCode();
+        for (int slot = mix(hash) & classMask; ; slot = (slot + 1) & classMask) {
+            int entry = classTable + slot * CLASS_SIZE;
+            int name = buffer.getInt(entry + 4);
+            if (name == EMPTY) {
+                return -1;
+            }
+            if (buffer.getInt(entry) == hash && stringEquals(name, originalClass)) {
+                return entry;
+            }
+        }
+    }
+
+    private String string(int ref) {
+        int position = stringPool + ref;
+        int length = buffer.getShort(position) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(position + 2);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private boolean stringEquals(int ref, String value) {
+        int position = stringPool + ref;
+        int length = buffer.getShort(position) & 0xFFFF;
+        if (length != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if ((buffer.get(position + 2 + i) & 0xFF) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Writer {
+        private final ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        private final DataOutputStream stringsOut = new DataOutputStream(strings);
+        private final Map<String, Integer> interned = new HashMap<>();
+
+        private final ByteArrayOutputStream members = new ByteArrayOutputStream();
+        private final DataOutputStream membersOut = new DataOutputStream(members);
+        private int memberCount = 0;
+
+        /**
+         * hash, name, obfuscated name, first member, member count of each class
+         */
+        private int[] classes = new int[4096 * 5];
+        private int classCount = 0;
+
+        private void addClass(String name, Map<String, String> classMembers) {
+            if ((classCount + 1) * 5 > classes.length) {
+                classes = Arrays.copyOf(classes, classes.length * 2);
+            }
+            int start = memberCount;
+            for (Map.Entry<String, String> member : classMembers.entrySet()) {
+                if (MappingParser.NAME.equals(member.getKey())) {
+                    continue;
+                }
+                write(membersOut, intern(member.getKey()));
+                write(membersOut, intern(member.getValue()));
+                memberCount++;
+            }
+            int i = classCount * 5;
+            classes[i] = name.hashCode();
+            classes[i + 1] = intern(name);
+            classes[i + 2] = intern(classMembers.get(MappingParser.NAME));
+            classes[i + 3] = start;
+            classes[i + 4] = memberCount - start;
+            classCount++;
+        }
+
+        private int intern(String value) {
+            Integer ref = interned.get(value);
+            if (ref == null) {
+                byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+                if (bytes.length > 0xFFFF) {
+                    throw new IllegalArgumentException("Name is too long: " + value);
+                }
+                ref = strings.size();
+                try {
+                    stringsOut.writeShort(bytes.length);
+                    stringsOut.write(bytes);
+                } catch (IOException e) {
+                    // Not thrown by a ByteArrayOutputStream
+                    throw new IllegalStateException(e);
+                }
+                interned.put(value, ref);
+            }
+            return ref;
+        }
+
+        private static void write(DataOutputStream out, int value) {
+            try {
+                out.writeInt(value);
+            } catch (IOException e) {
+                // Not thrown by a ByteArrayOutputStream
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+}
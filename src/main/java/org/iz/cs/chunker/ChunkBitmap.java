@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+/**
+ * One bit for each chunk of a rectangular area. Not thread safe.
+ */
+public final class ChunkBitmap {
+
+    private final int x1;
+    private final int x2;
+    private final int z1;
+    private final int z2;
+    private final int width;
+    private final long[] words;
+
+    public ChunkBitmap(int x1, int x2, int z1, int z2) {
+        this.x1 = x1;
+        this.x2 = x2;
+        this.z1 = z1;
+        this.z2 = z2;
+        this.width = x2 - x1 + 1;
+        long size = (long) width * (z2 - z1 + 1);
+        if (size > Integer.MAX_VALUE * 64L) {
+            throw new IllegalArgumentException("Area is too large");
+        }
+        this.words = new long[(int) ((size + 63) >>> 6)];
+    }
+
+    public boolean contains(int x, int z) {
+        return x >= x1 && x <= x2 && z >= z1 && z <= z2;
+    }
+
+    /**
+     * @return false for chunks outside of the area
+     */
+    public boolean get(int x, int z) {
+        if (!contains(x, z)) {
+            return false;
+        }
+        long index = index(x, z);
+        return (words[(int) (index >>> 6)] & (1L << index)) != 0;
+    }
+
+    public void set(int x, int z) {
+        long index = index(x, z);
+        words[(int) (index >>> 6)] |= 1L << index;
+    }
+
+    public long cardinality() {
+        long result = 0;
+        for (long word : words) {
+            result += Long.bitCount(word);
+        }
+        return result;
+    }
+
+    public int getX1() {
+        return x1;
+    }
+
+    public int getX2() {
+        return x2;
+    }
+
+    public int getZ1() {
+        return z1;
+    }
+
+    public int getZ2() {
+        return z2;
+    }
+
+    private long index(int x, int z) {
+        return (long) (z - z1) * width + (x - x1);
+    }
+
+}
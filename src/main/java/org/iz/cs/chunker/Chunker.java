@@ -18,22 +18,40 @@ package org.iz.cs.chunker;
 import static org.iz.cs.chunker.io.ConsolePrinter.println;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.Writer;
 import java.lang.Thread.UncaughtExceptionHandler;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.iz.cs.chunker.io.ConsolePrinter;
 import org.iz.cs.chunker.minecraft.ServerInterface;
+import org.iz.cs.chunker.minecraft.ServerReadiness;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 
 public class Chunker {
 
@@ -41,6 +59,7 @@ public class Chunker {
     public static List<String> DIMENSIONS = Arrays.asList("OVERWORLD", "NETHER", "END");
     private static final String CHUNKER_FOLDER = "chunker";
     public static ServerInterface server;
+    private static final Set<String> finishedDimensions = ConcurrentHashMap.newKeySet();
 
     public static PrintStream defaultOut;
     public static PrintStream defaultErr;
@@ -71,6 +90,10 @@ public class Chunker {
         }
         serverJarPath = serverJarPath.toAbsolutePath().normalize();
 
+        if (Configuration.classDataSharing && ClassDataSharing.shouldRelaunch()) {
+            System.exit(ClassDataSharing.relaunch(args, serverJarPath));
+        }
+
         Thread.currentThread().setUncaughtExceptionHandler(new UncaughtExceptionHandlerImplementation());
 
         server = ServerInterface.fromJar(serverJarPath);
@@ -80,11 +103,15 @@ public class Chunker {
         server.startServer(serverArgs);
 
         waitForServerToLoad(server);
+        server.getStartupTimeline().mark("server ready");
+        server.getStartupTimeline().print();
+        server.getStartupTimeline().close();
 
-        GenerationProgress progress = null;
+        List<GenerationProgress> progress = null;
         Path progressPath = getChunkerPath().resolve(PROGRESS_FILE);
         if (Configuration.saveProgress && Files.exists(progressPath)) {
             progress = readProgressFile();
+            println("Found saved progress. Resuming chunk generation");
         }
 
         boolean deleteOldProgress = generateChunks(progress);
@@ -95,6 +122,9 @@ public class Chunker {
 
         if (Configuration.saveProgress && deleteOldProgress) {
             Files.deleteIfExists(progressPath);
+            for (String dimension : Configuration.dimensions) {
+                ProgressBitmap.delete(getProgressBitmapPath(dimension));
+            }
         }
 
         println("Chunker Done");
@@ -104,93 +134,340 @@ public class Chunker {
         return Paths.get(".", Chunker.CHUNKER_FOLDER);
     }
 
+    /**
+     * File with the chunks of the area that have been generated in a dimension
+     */
+    public static Path getProgressBitmapPath(String dimension) {
+        return getChunkerPath().resolve("progress_" + dimension + ".bitmap");
+    }
+
+    /**
+     * Waits for the signal of the server that it is ready. The ready field is also checked once
+     * a second, in case the server sets it in a way that is not signaled
+     */
     private static void waitForServerToLoad(ServerInterface server) {
         println("Waiting for server to finish loading");
         int count = 0;
         int limit = 100;
-        long pause = 1000L;
-        while (!(Boolean) server.isServerReady() && count < limit) {
-            try {
-                Thread.sleep(pause);
-            } catch (InterruptedException e) {
-                throw new IllegalStateException(e);
+        try {
+            while (!ServerReadiness.await(1L, TimeUnit.SECONDS)
+                    && !(Boolean) server.isServerReady()
+                    && count < limit) {
+                count++;
             }
-            count++;
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
         }
         if (count >= limit) {
             throw new IllegalStateException("Server did not load in " + (limit) + " seconds");
         }
     }
 
-    private static boolean generateChunks(GenerationProgress progress) throws Exception {
-        GenerationProgress localProgress = progress;
+    private static boolean generateChunks(List<GenerationProgress> progress) throws Exception {
+        GenerationBudget budget = GenerationBudget.fromConfiguration();
+        if (Configuration.maxGenerationRate != null) {
+            println("Limiting chunk generation to " + Configuration.maxGenerationRate.toPlainString() + " per second");
+        }
+        if (Configuration.maxChunksInFlight > 1) {
+            println("Requesting up to " + Configuration.maxChunksInFlight + " chunks at a time");
+        } else if (budget.getMaxChunksInFlight() > 1) {
+            println("Requesting one chunk at a time in each dimension. "
+                    + "Raise max-chunks-in-flight to request more");
+        }
+
+        TickTimeThrottle throttle = null;
+        if (Configuration.targetMspt != null) {
+            println("Adjusting chunk generation to keep server ticks under "
+                    + Configuration.targetMspt.toPlainString() + " ms");
+            throttle = new TickTimeThrottle(budget, server::getAverageTickMillis,
+                    Configuration.targetMspt.doubleValue());
+            throttle.start();
+        }
 
+        HeapMonitor heapMonitor = null;
+        if (Configuration.heapHighWatermark > 0) {
+            heapMonitor = HeapMonitor.fromConfiguration();
+            if (heapMonitor.isSupported()) {
+                println("Pausing chunk generation when the heap is over "
+                        + Configuration.heapHighWatermark + "% full");
+                server.setHeapMonitor(heapMonitor);
+                heapMonitor.start();
+            } else {
+                println("The garbage collector does not report heap usage. "
+                        + "Chunk generation will not pause when the heap is full");
+                heapMonitor = null;
+            }
+        }
+
+        ProgressCheckpointer checkpointer = null;
+        if (Configuration.saveProgress
+                && (Configuration.checkpointInterval > 0 || Configuration.checkpointChunks > 0)) {
+            checkpointer = ProgressCheckpointer.fromConfiguration(Chunker::checkpoint);
+            server.setCheckpointer(checkpointer);
+            checkpointer.start();
+        }
+
+        GenerationMetrics metrics = GenerationMetrics.fromConfiguration(budget);
+        metrics.setPlan(getDimensionsToGenerate(progress),
+                ((long) Configuration.x2 - Configuration.x1 + 1) * ((long) Configuration.z2 - Configuration.z1 + 1));
+        server.setMetrics(metrics);
+        metrics.start();
+
+        ChunkerControl control = new ChunkerControl(budget, metrics, throttle);
+        control.register();
+
+        MetricsEndpoint endpoint = null;
+        if (Configuration.metricsPort > 0) {
+            try {
+                endpoint = new MetricsEndpoint(Configuration.metricsHost, Configuration.metricsPort, metrics, budget,
+                        server::getAverageTickMillis);
+                endpoint.start();
+            } catch (IOException e) {
+                defaultErr.println("Could not serve metrics on " + Configuration.metricsHost
+                        + " port " + Configuration.metricsPort);
+                e.printStackTrace(defaultErr);
+            }
+        }
+
+        try {
+            if (Configuration.parallelDimensions && Configuration.dimensions.length > 1) {
+                generateChunksInParallel(progress, budget);
+            } else {
+                generateChunksInSequence(progress, budget);
+            }
+        } finally {
+            if (heapMonitor != null) {
+                server.setHeapMonitor(null);
+                heapMonitor.close();
+            }
+            if (throttle != null) {
+                throttle.close();
+            }
+            if (checkpointer != null) {
+                server.setCheckpointer(null);
+                checkpointer.close();
+            }
+            if (endpoint != null) {
+                endpoint.close();
+            }
+            control.close();
+            server.setMetrics(null);
+            metrics.close();
+        }
+
+        List<GenerationProgress> remaining = getRemainingProgress();
+        boolean done = remaining.isEmpty();
+        if (done) {
+            println("Chunk generation done");
+        } else {
+            saveProgress(remaining);
+        }
+        return done;
+    }
+
+    /**
+     * Dimensions that were not done in a previous run
+     */
+    private static List<String> getDimensionsToGenerate(List<GenerationProgress> progress) {
+        List<String> result = new ArrayList<>();
+        for (String dimension : Configuration.dimensions) {
+            if (progress == null || progress.isEmpty() || findProgress(progress, dimension) != null) {
+                result.add(dimension);
+            }
+        }
+        return result;
+    }
+
+    private static void generateChunksInSequence(List<GenerationProgress> progress, GenerationBudget budget) {
+        GenerationProgress localProgress = progress == null || progress.isEmpty() ? null : progress.get(0);
 
         for (String dimension : Configuration.dimensions) {
             if (localProgress != null && !dimension.equals(localProgress.getDimension())) {
+                // Already done in a previous run
+                finishedDimensions.add(dimension);
                 continue;
             }
 
-            boolean hasWorked = server.generateChunks(
+            boolean finished = server.generateChunks(
                     dimension,
                     Configuration.x1, Configuration.x2,
                     Configuration.z1, Configuration.z2,
-                    localProgress);
+                    localProgress,
+                    budget);
             localProgress = null;
 
-            if (!server.isServerRunning()) {
-                saveProgress(dimension, hasWorked);
-                return false;
+            if (finished) {
+                finishedDimensions.add(dimension);
+            }
+            if (!finished || !server.isServerRunning()) {
+                return;
             }
         }
-        println("Chunk generation done");
-        return true;
     }
 
-    private static boolean isDone(String dimension, int x, int z) {
-        return Arrays.binarySearch(Configuration.dimensions, dimension) == Configuration.dimensions.length
-                && x == Configuration.x2
-                && z == Configuration.z2;
+    private static void generateChunksInParallel(List<GenerationProgress> progress, GenerationBudget budget)
+            throws InterruptedException {
+        println("Generating dimensions " + String.join(", ", Configuration.dimensions) + " in parallel");
+        ExecutorService executor = Executors.newFixedThreadPool(Configuration.dimensions.length, r -> {
+            Thread t = new Thread(r);
+            t.setName("Chunker " + t.getId());
+            return t;
+        });
+        Map<String, Future<Boolean>> results = new LinkedHashMap<>();
+        try {
+            for (String dimension : Configuration.dimensions) {
+                GenerationProgress dimensionProgress = null;
+                if (progress != null) {
+                    dimensionProgress = findProgress(progress, dimension);
+                    if (dimensionProgress == null) {
+                        // Already done in a previous run
+                        finishedDimensions.add(dimension);
+                        continue;
+                    }
+                }
+                GenerationProgress oldProgress = dimensionProgress;
+                results.put(dimension, executor.submit(() -> server.generateChunks(
+                        dimension,
+                        Configuration.x1, Configuration.x2,
+                        Configuration.z1, Configuration.z2,
+                        oldProgress,
+                        budget)));
+            }
+
+            for (Map.Entry<String, Future<Boolean>> entry : results.entrySet()) {
+                boolean finished;
+                try {
+                    finished = entry.getValue().get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Error generating chunks in dimension " + entry.getKey(),
+                            e.getCause());
+                }
+                if (finished) {
+                    finishedDimensions.add(entry.getKey());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
-    private static void saveProgress(String dimension, boolean hasWorked) {
-        if (isDone(dimension, server.getLastX(), server.getLastZ())) {
+    /**
+     * Progress of the configured dimensions that are not done yet, in the configured order.
+     * Can be called while chunks are being generated.
+     */
+    private static List<GenerationProgress> getRemainingProgress() {
+        List<GenerationProgress> result = new ArrayList<>();
+        for (String dimension : Configuration.dimensions) {
+            if (finishedDimensions.contains(dimension)) {
+                continue;
+            }
+            GenerationProgress dimensionProgress = server.getProgress(dimension);
+            if (dimensionProgress == null) {
+                dimensionProgress = new GenerationProgress();
+                dimensionProgress.setDimension(dimension);
+            }
+            result.add(dimensionProgress);
+        }
+        return result;
+    }
+
+    /**
+     * Saves the progress made so far without stopping the generation
+     */
+    private static void checkpoint() {
+        Runnable writeBitmaps = server.snapshotProgress();
+        List<GenerationProgress> remaining = getRemainingProgress();
+        // Chunks are recorded when they are generated, they are in the progress only once the server saved them
+        if (!server.saveChunks()) {
             return;
         }
-        GenerationProgress progress = new GenerationProgress();
-        if (hasWorked) {
-            progress.setX(server.getLastX());
-            progress.setZ(server.getLastZ());
+        writeBitmaps.run();
+        if (!remaining.isEmpty()) {
+            writeProgrssFile(remaining);
         }
-        progress.setDimension(dimension);
-        writeProgrssFile(progress);
+    }
+
+    private static GenerationProgress findProgress(List<GenerationProgress> progress, String dimension) {
+        for (GenerationProgress dimensionProgress : progress) {
+            if (dimension.equals(dimensionProgress.getDimension())) {
+                return dimensionProgress;
+            }
+        }
+        return null;
+    }
 
+    private static void saveProgress(List<GenerationProgress> progress) {
+        if (!Configuration.saveProgress || progress.isEmpty()) {
+            return;
+        }
+        writeProgrssFile(progress);
     }
 
-    private static GenerationProgress readProgressFile() {
+    private static List<GenerationProgress> readProgressFile() {
         try (BufferedReader br = Files.newBufferedReader(
                 getChunkerPath().resolve(PROGRESS_FILE),
                 StandardCharsets.UTF_8)) {
-            return LazyLoader.gson.fromJson(br, GenerationProgress.class);
-        } catch (IOException e) {
+            JsonElement json = JsonParser.parseReader(br);
+            List<GenerationProgress> result = new ArrayList<>();
+            if (json.isJsonArray()) {
+                for (JsonElement element : json.getAsJsonArray()) {
+                    result.add(LazyLoader.gson.fromJson(element, GenerationProgress.class));
+                }
+            } else if (json.isJsonObject()) {
+                result.add(LazyLoader.gson.fromJson(json, GenerationProgress.class));
+            }
+            return result;
+        } catch (IOException | JsonParseException e) {
             throw new RuntimeException("Could not read progress file", e);
         }
     }
 
-    private static void writeProgrssFile(GenerationProgress progress) {
-        try (BufferedWriter bw = Files.newBufferedWriter(
-                getChunkerPath().resolve(PROGRESS_FILE),
-                StandardCharsets.UTF_8,
-                StandardOpenOption.TRUNCATE_EXISTING,
-                StandardOpenOption.CREATE)) {
-            LazyLoader.gson.toJson(progress, bw);
-            bw.flush();
+    /**
+     * Writes a temporary file, forces it to the disk and then renames it, so that the progress file
+     * is either the old or the new one even if the process or the machine crashes in the meantime
+     */
+    static void writeProgrssFile(List<GenerationProgress> progress) {
+        writeProgrssFile(getChunkerPath(), progress);
+    }
+
+    static synchronized void writeProgrssFile(Path chunkerPath, List<GenerationProgress> progress) {
+        Path progressPath = chunkerPath.resolve(PROGRESS_FILE);
+        Path temporaryPath = chunkerPath.resolve(PROGRESS_FILE + ".tmp");
+        try {
+            Files.createDirectories(chunkerPath);
+            try (FileChannel channel = FileChannel.open(temporaryPath,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.CREATE)) {
+                Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1);
+                LazyLoader.gson.toJson(progress, writer);
+                writer.flush();
+                channel.force(true);
+            }
+            try {
+                Files.move(temporaryPath, progressPath,
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryPath, progressPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            forceDirectory(chunkerPath);
         } catch (IOException e) {
             defaultErr.println("Could not save progress");
             e.printStackTrace(defaultErr);
         }
     }
 
+    /**
+     * Makes a rename in the directory durable. Not possible on all platforms, in which case it is skipped
+     */
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
     private static final class UncaughtExceptionHandlerImplementation implements UncaughtExceptionHandler {
         @Override
         public void uncaughtException(Thread t, Throwable e) {
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+import static org.iz.cs.chunker.io.ConsolePrinter.println;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Exposes the {@link GenerationMetrics} of a run over JMX and changes its {@link GenerationBudget}.
+ * Changes last until the end of the run and are not saved in the configuration.
+ */
+public final class ChunkerControl implements ChunkerMXBean, Closeable {
+
+    public static final String OBJECT_NAME = "org.iz.cs.chunker:type=Chunker";
+
+    private static final int SHORT_WINDOW_SECONDS = 10;
+
+    private final GenerationBudget budget;
+    private final GenerationMetrics metrics;
+    private final TickTimeThrottle throttle;
+
+    private volatile double maxGenerationRate;
+    private volatile int maxChunksInFlight;
+    private ObjectName name = null;
+
+    /**
+     * @param throttle null if the generation is not throttled by the tick time
+     */
+    public ChunkerControl(GenerationBudget budget, GenerationMetrics metrics, TickTimeThrottle throttle) {
+        this.budget = budget;
+        this.metrics = metrics;
+        this.throttle = throttle;
+        this.maxGenerationRate = budget.getMaxGenerationRate();
+        this.maxChunksInFlight = budget.getMaxChunksInFlight();
+    }
+
+    /**
+     * Registers the bean in the platform MBean server. Generation works without it, so a failure is only reported
+     */
+    public void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            server.registerMBean(this, objectName);
+            name = objectName;
+        } catch (JMException e) {
+            Chunker.defaultErr.println("Could not register " + OBJECT_NAME);
+            e.printStackTrace(Chunker.defaultErr);
+        }
+    }
+
+    @Override
+    public long getGeneratedChunks() {
+        return metrics.getGenerated();
+    }
+
+    @Override
+    public long getTotalChunks() {
+        return metrics.getTotal();
+    }
+
+    @Override
+    public double getProgressPercent() {
+        return metrics.getProgressPercent();
+    }
+
+    @Override
+    public double getChunksPerSecond() {
+        return metrics.getRate(SHORT_WINDOW_SECONDS);
+    }
+
+    @Override
+    public double getEstimatedSecondsRemaining() {
+        return metrics.getEstimatedSecondsRemaining();
+    }
+
+    @Override
+    public double getLatencyP50Millis() {
+        return metrics.getLatency().getPercentileMillis(50);
+    }
+
+    @Override
+    public double getLatencyP90Millis() {
+        return metrics.getLatency().getPercentileMillis(90);
+    }
+
+    @Override
+    public double getLatencyP99Millis() {
+        return metrics.getLatency().getPercentileMillis(99);
+    }
+
+    @Override
+    public double getLatencyMaxMillis() {
+        return metrics.getLatency().getMaxMillis();
+    }
+
+    @Override
+    public String getCurrentDimension() {
+        return String.join(",", metrics.getCurrentDimensions());
+    }
+
+    @Override
+    public int getChunksInFlight() {
+        return metrics.getInFlight();
+    }
+
+    @Override
+    public boolean isPaused() {
+        return budget.isPaused();
+    }
+
+    @Override
+    public void pause() {
+        if (!budget.isPaused()) {
+            budget.pause();
+            println("Chunk generation paused");
+        }
+    }
+
+    @Override
+    public void resume() {
+        if (budget.isPaused()) {
+            budget.resume();
+            println("Chunk generation resumed");
+        }
+    }
+
+    @Override
+    public double getMaxGenerationRate() {
+        return maxGenerationRate;
+    }
+
+    @Override
+    public synchronized void setMaxGenerationRate(double chunksPerSecond) {
+        if (chunksPerSecond < 0 || Double.isNaN(chunksPerSecond) || Double.isInfinite(chunksPerSecond)) {
+            throw new IllegalArgumentException("Invalid value for max-generation-rate: " + chunksPerSecond);
+        }
+        if (throttle != null) {
+            throttle.setMaxGenerationRate(chunksPerSecond);
+        } else {
+            budget.setMaxGenerationRate(chunksPerSecond);
+        }
+        maxGenerationRate = chunksPerSecond;
+        println(chunksPerSecond == 0
+                ? "Chunk generation rate is no longer limited"
+                : "Limiting chunk generation to " + chunksPerSecond + " per second");
+    }
+
+    @Override
+    public int getMaxChunksInFlight() {
+        return maxChunksInFlight;
+    }
+
+    @Override
+    public synchronized void setMaxChunksInFlight(int maxChunksInFlight) {
+        if (maxChunksInFlight < 1) {
+            throw new IllegalArgumentException("Invalid value for max-chunks-in-flight: " + maxChunksInFlight);
+        }
+        if (throttle != null) {
+            throttle.setMaxChunksInFlight(maxChunksInFlight);
+        } else {
+            budget.setMaxChunksInFlight(maxChunksInFlight);
+        }
+        this.maxChunksInFlight = maxChunksInFlight;
+        println("Requesting up to " + maxChunksInFlight + " chunks at a time");
+    }
+
+    /**
+     * Unregisters the bean. Resumes the generation, so that nothing waits for a bean that is gone
+     */
+    @Override
+    public void close() {
+        budget.resume();
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (InstanceNotFoundException e) {
+            // already unregistered
+        } catch (JMException e) {
+            Chunker.defaultErr.println("Could not unregister " + OBJECT_NAME);
+            e.printStackTrace(Chunker.defaultErr);
+        }
+        name = null;
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+/**
+ * Status of the chunk generation and the limits that can be changed while chunks are being generated.
+ * Registered in the platform MBean server as {@value ChunkerControl#OBJECT_NAME} while chunks are generated.
+ */
+public interface ChunkerMXBean {
+
+    /**
+     * Chunks generated by this run
+     */
+    long getGeneratedChunks();
+
+    /**
+     * Chunks that will be generated by this run, including the chunks already generated
+     */
+    long getTotalChunks();
+
+    double getProgressPercent();
+
+    /**
+     * Chunks per second over the last 10 seconds
+     */
+    double getChunksPerSecond();
+
+    /**
+     * -1 if no chunks are being generated
+     */
+    double getEstimatedSecondsRemaining();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP90Millis();
+
+    double getLatencyP99Millis();
+
+    double getLatencyMaxMillis();
+
+    /**
+     * Dimensions in which chunks are being generated, separated by commas
+     */
+    String getCurrentDimension();
+
+    int getChunksInFlight();
+
+    boolean isPaused();
+
+    /**
+     * No more chunks are requested from the server until {@link #resume}
+     */
+    void pause();
+
+    void resume();
+
+    /**
+     * Chunks per second, 0 for no limit. With target-mspt this is the upper limit of the throttle
+     */
+    double getMaxGenerationRate();
+
+    void setMaxGenerationRate(double chunksPerSecond);
+
+    /**
+     * At least 1, and can be raised above the max-chunks-in-flight the generation started with.
+     * With target-mspt this is the upper limit of the throttle
+     */
+    int getMaxChunksInFlight();
+
+    void setMaxChunksInFlight(int maxChunksInFlight);
+
+}
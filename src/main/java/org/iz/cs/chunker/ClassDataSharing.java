@@ -0,0 +1,200 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+import static org.iz.cs.chunker.io.ConsolePrinter.println;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Runs Chunker in a child JVM that uses a dynamic class data sharing (CDS) archive, so that the
+ * classes of Chunker, its libraries and the server are not parsed and verified again on each start.
+ * <p>
+ * The first run is a training run, which saves all classes loaded until the JVM exits in the archive.
+ * The following runs map the archive. The name of the archive is made from the JVM, its arguments,
+ * the class path and the server jar, so a new archive is made when any of them changes.
+ * Requires Java 13 or newer and a class path of jar files only.
+ */
+public final class ClassDataSharing {
+
+    private static final String CHILD_PROPERTY = "org.iz.cs.chunker.cds";
+    private static final String ARCHIVE_PREFIX = "cds-";
+    private static final String ARCHIVE_EXTENSION = ".jsa";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+    private static final int MIN_JAVA_VERSION = 13;
+
+    private ClassDataSharing() {
+    }
+
+    /**
+     * @return false if this is already the child JVM or the archive can not be used with this JVM
+     */
+    public static boolean shouldRelaunch() {
+        if (System.getProperty(CHILD_PROPERTY) != null) {
+            return false;
+        }
+        if (getJavaVersion() < MIN_JAVA_VERSION) {
+            println("Class data sharing requires Java " + MIN_JAVA_VERSION + " or newer");
+            return false;
+        }
+        for (String argument : getJvmArguments()) {
+            if (argument.startsWith("-Xshare")
+                    || argument.startsWith("-XX:SharedArchiveFile")
+                    || argument.startsWith("-XX:ArchiveClassesAtExit")) {
+                println("Class data sharing is already configured by the JVM arguments");
+                return false;
+            }
+        }
+        for (String entry : getClassPath()) {
+            if (!new File(entry).isFile()) {
+                println("Class data sharing requires a class path of jar files only");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs Chunker with the same arguments in a child JVM and waits for it to exit
+     *
+     * @return exit code of the child JVM
+     */
+    public static int relaunch(String[] args, Path serverJar) throws IOException, InterruptedException {
+        Path chunkerPath = Chunker.getChunkerPath();
+        Files.createDirectories(chunkerPath);
+        Path archive = chunkerPath.resolve(ARCHIVE_PREFIX + getArchiveKey(serverJar) + ARCHIVE_EXTENSION);
+        Path temporaryArchive = archive.resolveSibling(archive.getFileName() + TEMPORARY_EXTENSION);
+        boolean training = !Files.exists(archive);
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(getJvmArguments());
+        if (training) {
+            deleteOldArchives(chunkerPath);
+            command.add("-XX:ArchiveClassesAtExit=" + temporaryArchive);
+            println("Training run. The loaded classes will be saved in " + archive + " when the server stops");
+        } else {
+            command.add("-XX:SharedArchiveFile=" + archive);
+            println("Starting with class data sharing archive " + archive);
+        }
+        command.add("-D" + CHILD_PROPERTY + "=true");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Chunker.class.getName());
+        command.addAll(Arrays.asList(args));
+
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        Thread stopChild = new Thread(() -> {
+            if (process.isAlive()) {
+                process.destroy();
+                try {
+                    process.waitFor();
+                } catch (InterruptedException e) {
+                    // exiting anyway
+                }
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(stopChild);
+
+        int exitCode = process.waitFor();
+        Runtime.getRuntime().removeShutdownHook(stopChild);
+
+        if (training && Files.exists(temporaryArchive)) {
+            // An archive can be incomplete if the JVM did not exit normally
+            if (exitCode == 0) {
+                saveArchive(temporaryArchive, archive);
+            } else {
+                Files.deleteIfExists(temporaryArchive);
+            }
+        }
+        return exitCode;
+    }
+
+    private static void saveArchive(Path temporaryArchive, Path archive) throws IOException {
+        try {
+            Files.move(temporaryArchive, archive, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaryArchive, archive, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteOldArchives(Path chunkerPath) throws IOException {
+        try (DirectoryStream<Path> archives = Files.newDirectoryStream(chunkerPath, ARCHIVE_PREFIX + "*")) {
+            for (Path archive : archives) {
+                Files.deleteIfExists(archive);
+            }
+        }
+    }
+
+    private static String getArchiveKey(Path serverJar) throws IOException {
+        CRC32 crc = new CRC32();
+        update(crc, System.getProperty("java.home"));
+        update(crc, System.getProperty("java.vm.version"));
+        for (String argument : getJvmArguments()) {
+            update(crc, argument);
+        }
+        for (String entry : getClassPath()) {
+            update(crc, Paths.get(entry));
+        }
+        update(crc, serverJar);
+        return String.format("%08x", crc.getValue());
+    }
+
+    private static void update(CRC32 crc, Path file) throws IOException {
+        update(crc, file.toAbsolutePath().toString());
+        update(crc, Long.toString(Files.size(file)));
+        update(crc, Long.toString(Files.getLastModifiedTime(file).toMillis()));
+    }
+
+    private static void update(CRC32 crc, String value) {
+        crc.update(value.getBytes(StandardCharsets.UTF_8));
+        crc.update(0);
+    }
+
+    private static List<String> getJvmArguments() {
+        return ManagementFactory.getRuntimeMXBean().getInputArguments();
+    }
+
+    private static List<String> getClassPath() {
+        return Arrays.asList(System.getProperty("java.class.path").split(File.pathSeparator));
+    }
+
+    private static int getJavaVersion() {
+        String version = System.getProperty("java.specification.version");
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        try {
+            return Integer.parseInt(version);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+}
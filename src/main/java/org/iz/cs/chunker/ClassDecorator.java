@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+
+import org.iz.cs.chunker.minecraft.Constants;
+import org.iz.cs.chunker.minecraft.ServerReadiness;
+
+import javassist.ByteArrayClassPath;
+import javassist.CannotCompileException;
+import javassist.ClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.CtField;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.expr.ExprEditor;
+import javassist.expr.FieldAccess;
+
+/**
+ * Modifies the dedicated server class, so that its instance can be accessed, and the class with
+ * the ready field, so that it signals {@link ServerReadiness} when the server is ready.
+ * Kept apart from {@link JarClassLoader} so that javassist is only loaded when a class
+ * is actually modified and not when the modified class is read from the cache.
+ */
+final class ClassDecorator implements ClassPath {
+
+    /**
+     * Must be changed whenever {@link #decorate} changes, so that classes decorated
+     * by older versions are not used
+     */
+    static final int DECORATION_VERSION = 2;
+
+    private final JarClassLoader loader;
+
+    ClassDecorator(JarClassLoader loader) {
+        this.loader = loader;
+    }
+
+    byte[] decorate(String name, byte[] classFile) throws Exception {
+        ClassPool cp = new ClassPool();
+
+        cp.insertClassPath(new ByteArrayClassPath(name, classFile));
+        cp.insertClassPath(this);
+        cp.appendSystemPath();
+        CtClass sc = cp.get(name);
+
+        if (name.equals(loader.getClassNameToDecorate())) {
+            CtField field = new CtField(sc, "instance", sc);
+            field.setModifiers(Modifier.STATIC | Modifier.PUBLIC | Modifier.VOLATILE);
+            sc.addField(field);
+
+            for (CtConstructor scc : sc.getDeclaredConstructors()) {
+                scc.insertAfter("this." + Constants.INSTANCE + " = this;");
+            }
+        }
+
+        if (name.equals(loader.getReadyClassName())) {
+            String readyField = loader.getReadyFieldName();
+            sc.instrument(new ExprEditor() {
+                @Override
+                public void edit(FieldAccess f) throws CannotCompileException {
+                    if (f.isWriter() && f.getFieldName().equals(readyField) && f.getClassName().equals(name)) {
+                        f.replace("{ $proceed($$); " + ServerReadiness.class.getName() + ".setReady($1); }");
+                    }
+                }
+            });
+        }
+
+        byte[] bc = sc.toBytecode();
+        return bc;
+    }
+
+    @Override
+    public URL find(String classname) {
+        try {
+            URLConnection con = openClassfile0(classname);
+            if (con == null) {
+                return null;
+            }
+            InputStream is = con.getInputStream();
+            if (is != null) {
+                is.close();
+                return con.getURL();
+            } else {
+                throw new RuntimeException();
+            }
+        }
+        catch (IOException e) {}
+        return null;
+    }
+
+    private URLConnection openClassfile0(String name) throws IOException {
+        URL r = JarClassLoader.delegateToParent(name)
+                ? loader.getParent().getResource(name.replace('.', '/') + ".class")
+                : loader.findResource(name.replace('.', '/') + ".class");
+        if (r == null) {
+            return null;
+        }
+        return r.openConnection();
+    }
+
+    @Override
+    public InputStream openClassfile(String classname) throws NotFoundException {
+        try {
+            URLConnection con = openClassfile0(classname);
+            if (con != null) {
+                return con.getInputStream();
+            }
+        } catch (IOException e) {}
+        return null;        // not found
+    }
+
+}
@@ -25,6 +25,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Properties;
 
+import org.iz.cs.chunker.traversal.GenerationOrder;
+import org.iz.cs.chunker.traversal.RegionOrder;
+
 public class Configuration {
 
     public  static final String PROPERTIES = "chunker.properties";
@@ -49,12 +52,62 @@ public class Configuration {
     public static BigDecimal maxGenerationRate = null;
     private static final String MAX_GENERATION_RATE= "max-generation-rate";
 
+    public static BigDecimal targetMspt = null;
+    private static final String TARGET_MSPT = "target-mspt";
+
+    public static Integer maxChunksInFlight = null;
+    private static final String MAX_CHUNKS_IN_FLIGHT = "max-chunks-in-flight";
+
+    public static Integer heapHighWatermark = null;
+    private static final String HEAP_HIGH_WATERMARK = "heap-high-watermark";
+
+    public static Integer heapLowWatermark = null;
+    private static final String HEAP_LOW_WATERMARK = "heap-low-watermark";
+
+    public static Boolean parallelDimensions = null;
+    private static final String PARALLEL_DIMENSIONS = "parallel-dimensions";
+
+    public static GenerationOrder generationOrder = null;
+    private static final String GENERATION_ORDER = "generation-order";
+
+    public static RegionOrder regionOrder = null;
+    private static final String REGION_ORDER = "region-order";
+
+    public static Integer centerX = null;
+    public static Integer centerZ = null;
+    private static final String CENTER_X = "center-x";
+    private static final String CENTER_Z = "center-z";
+
+    public static Boolean skipExistingChunks = null;
+    private static final String SKIP_EXISTING_CHUNKS = "skip-existing-chunks";
+
+    public static Integer skipExistingMargin = null;
+    private static final String SKIP_EXISTING_MARGIN = "skip-existing-margin";
+
     public static Boolean supressServerOutput = null;
     private static final String SUPPRESS_SERVER_OUTPUT = "suppress-server-output";
 
     public static Boolean saveProgress = null;
     private static final String SAVE_GENERATION_PROGRESS = "save-generation-progress";
 
+    public static Integer checkpointInterval = null;
+    private static final String CHECKPOINT_INTERVAL = "checkpoint-interval";
+
+    public static Integer checkpointChunks = null;
+    private static final String CHECKPOINT_CHUNKS = "checkpoint-chunks";
+
+    public static Integer metricsInterval = null;
+    private static final String METRICS_INTERVAL = "metrics-interval";
+
+    public static Integer metricsPort = null;
+    private static final String METRICS_PORT = "metrics-port";
+
+    public static String metricsHost = null;
+    private static final String METRICS_HOST = "metrics-host";
+
+    public static Boolean classDataSharing = null;
+    private static final String CLASS_DATA_SHARING = "class-data-sharing";
+
     public static Properties getDefaults() {
         Properties defaults = new Properties();
         defaults.setProperty(DIMENSION_CONFIG_NAME, "OVERWORLD");
@@ -62,6 +115,20 @@ public class Configuration {
         defaults.setProperty(SUPPRESS_SERVER_OUTPUT, "false");
         defaults.setProperty(DEFAULT_BEHAVIORS, "false");
         defaults.setProperty(SAVE_GENERATION_PROGRESS, "false");
+        defaults.setProperty(MAX_CHUNKS_IN_FLIGHT, "1");
+        defaults.setProperty(HEAP_HIGH_WATERMARK, "0");
+        defaults.setProperty(HEAP_LOW_WATERMARK, "70");
+        defaults.setProperty(PARALLEL_DIMENSIONS, "false");
+        defaults.setProperty(GENERATION_ORDER, GenerationOrder.ROWS.name());
+        defaults.setProperty(REGION_ORDER, RegionOrder.ROWS.name());
+        defaults.setProperty(SKIP_EXISTING_CHUNKS, "false");
+        defaults.setProperty(SKIP_EXISTING_MARGIN, "32");
+        defaults.setProperty(CHECKPOINT_INTERVAL, "60");
+        defaults.setProperty(CHECKPOINT_CHUNKS, "0");
+        defaults.setProperty(METRICS_INTERVAL, "60");
+        defaults.setProperty(METRICS_PORT, "0");
+        defaults.setProperty(METRICS_HOST, "127.0.0.1");
+        defaults.setProperty(CLASS_DATA_SHARING, "false");
         return defaults;
     }
 
@@ -151,12 +218,80 @@ public class Configuration {
             }
         }
 
+        if (props.getProperty(TARGET_MSPT) != null) {
+            try {
+                targetMspt = new BigDecimal(props.getProperty(TARGET_MSPT));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for " + TARGET_MSPT);
+            }
+            if (targetMspt.compareTo(BigDecimal.ZERO) <= 0) {
+                throw new IllegalArgumentException("Invalid value for " + TARGET_MSPT);
+            }
+        }
+
+        maxChunksInFlight = getInteger(props, MAX_CHUNKS_IN_FLIGHT);
+        if (maxChunksInFlight < 1) {
+            throw new IllegalArgumentException("Invalid value for " + MAX_CHUNKS_IN_FLIGHT);
+        }
+
+        heapHighWatermark = getInteger(props, HEAP_HIGH_WATERMARK);
+        if (heapHighWatermark < 0 || heapHighWatermark > 100) {
+            throw new IllegalArgumentException("Invalid value for " + HEAP_HIGH_WATERMARK);
+        }
+        heapLowWatermark = getInteger(props, HEAP_LOW_WATERMARK);
+        if (heapLowWatermark < 0 || (heapHighWatermark > 0 && heapLowWatermark >= heapHighWatermark)) {
+            throw new IllegalArgumentException("Invalid value for " + HEAP_LOW_WATERMARK);
+        }
+
+        parallelDimensions = Boolean.valueOf(props.getProperty(PARALLEL_DIMENSIONS));
+
+        generationOrder = getEnum(props, GENERATION_ORDER, GenerationOrder.class);
+        regionOrder = getEnum(props, REGION_ORDER, RegionOrder.class);
+
+        centerX = props.getProperty(CENTER_X) != null
+                ? getInteger(props, CENTER_X)
+                : Math.floorDiv(x1 + x2, 2);
+        centerZ = props.getProperty(CENTER_Z) != null
+                ? getInteger(props, CENTER_Z)
+                : Math.floorDiv(z1 + z2, 2);
+
+        skipExistingChunks = Boolean.valueOf(props.getProperty(SKIP_EXISTING_CHUNKS));
+        skipExistingMargin = getInteger(props, SKIP_EXISTING_MARGIN);
+        if (skipExistingMargin < 0) {
+            throw new IllegalArgumentException("Invalid value for " + SKIP_EXISTING_MARGIN);
+        }
+
         saveProgress = Boolean.valueOf(props.getProperty(SAVE_GENERATION_PROGRESS));
 
+        checkpointInterval = getInteger(props, CHECKPOINT_INTERVAL);
+        if (checkpointInterval < 0) {
+            throw new IllegalArgumentException("Invalid value for " + CHECKPOINT_INTERVAL);
+        }
+        checkpointChunks = getInteger(props, CHECKPOINT_CHUNKS);
+        if (checkpointChunks < 0) {
+            throw new IllegalArgumentException("Invalid value for " + CHECKPOINT_CHUNKS);
+        }
+
+        metricsInterval = getInteger(props, METRICS_INTERVAL);
+        if (metricsInterval < 0) {
+            throw new IllegalArgumentException("Invalid value for " + METRICS_INTERVAL);
+        }
+
+        metricsPort = getInteger(props, METRICS_PORT);
+        if (metricsPort < 0 || metricsPort > 65535) {
+            throw new IllegalArgumentException("Invalid value for " + METRICS_PORT);
+        }
+        metricsHost = props.getProperty(METRICS_HOST).trim();
+        if (metricsHost.isEmpty()) {
+            throw new IllegalArgumentException("Invalid value for " + METRICS_HOST);
+        }
+
+        classDataSharing = Boolean.valueOf(props.getProperty(CLASS_DATA_SHARING));
+
     }
 
     private static int getInteger(Properties props, String key) {
-        String string = (String) props.get(key);
+        String string = props.getProperty(key);
         if (string == null) {
             throw new IllegalArgumentException("Missing property: " + key);
         }
@@ -167,6 +302,14 @@ public class Configuration {
         }
     }
 
+    private static <E extends Enum<E>> E getEnum(Properties props, String key, Class<E> enumClass) {
+        try {
+            return Enum.valueOf(enumClass, props.getProperty(key).trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid value for " + key);
+        }
+    }
+
     private static void createExampleProperties(Path filePath) {
         InputStream is = Configuration.class.getResourceAsStream(PROPERTIES);
         try {
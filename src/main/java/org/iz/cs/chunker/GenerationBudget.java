@@ -0,0 +1,251 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits how many chunks are being generated at the same time and how many are started
+ * per second. A single instance is shared by everything that generates chunks during a run,
+ * so the limits are global even when several dimensions are generated at once.
+ * The limits can be changed and the generation paused while chunks are being generated.
+ */
+public final class GenerationBudget {
+
+    private final ResizableSemaphore inFlight;
+    private int maxChunksInFlight;
+    private final int sequentialChunksInFlight;
+    private final AtomicLong completed = new AtomicLong();
+    private final LongAdder throttledNanos = new LongAdder();
+    private final LongAdder pausedNanos = new LongAdder();
+    private final Object pauseLock = new Object();
+    private volatile boolean paused = false;
+
+    private volatile long intervalNanos;
+    private volatile double maxGenerationRate;
+    private long nextSlot;
+    private boolean started = false;
+
+    public GenerationBudget(int maxChunksInFlight, BigDecimal maxGenerationRate) {
+        this(maxChunksInFlight, 1, maxGenerationRate);
+    }
+
+    /**
+     * @param sequentialChunksInFlight up to this many chunks in flight each dimension requests one chunk at a time
+     */
+    private GenerationBudget(int maxChunksInFlight, int sequentialChunksInFlight, BigDecimal maxGenerationRate) {
+        this.inFlight = new ResizableSemaphore(maxChunksInFlight);
+        this.maxChunksInFlight = maxChunksInFlight;
+        this.sequentialChunksInFlight = sequentialChunksInFlight;
+        if (maxGenerationRate != null) {
+            this.intervalNanos = new BigDecimal(TimeUnit.SECONDS.toNanos(1))
+                    .divide(maxGenerationRate, 0, RoundingMode.DOWN)
+                    .longValue();
+            this.maxGenerationRate = maxGenerationRate.doubleValue();
+        } else {
+            this.intervalNanos = 0L;
+            this.maxGenerationRate = 0;
+        }
+    }
+
+    /**
+     * With parallel-dimensions and one chunk in flight each dimension gets a chunk in flight of its own,
+     * otherwise the dimensions would only take turns
+     */
+    public static GenerationBudget fromConfiguration() {
+        int sequentialChunksInFlight = Configuration.parallelDimensions ? Configuration.dimensions.length : 1;
+        int maxChunksInFlight = Configuration.maxChunksInFlight;
+        if (Configuration.parallelDimensions && maxChunksInFlight == 1) {
+            maxChunksInFlight = sequentialChunksInFlight;
+        }
+        return new GenerationBudget(maxChunksInFlight, sequentialChunksInFlight, Configuration.maxGenerationRate);
+    }
+
+    /**
+     * Takes a slot for one chunk. Waits at most the given time for the generation to be resumed
+     * and for a chunk in flight to complete, but always waits for the rate limit.
+     * @return false if no chunk completed in time. Nothing is taken in that case
+     */
+    public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        if (paused && !awaitResume(unit.toNanos(timeout))) {
+            return false;
+        }
+        if (!inFlight.tryAcquire(timeout, unit)) {
+            return false;
+        }
+        if (intervalNanos > 0) {
+            long now = System.nanoTime();
+            long wait = reserveSlot() - now;
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    inFlight.release();
+                    throw e;
+                } finally {
+                    // What was actually slept, which is usually a little longer than the wait
+                    throttledNanos.add(System.nanoTime() - now);
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean awaitResume(long timeoutNanos) throws InterruptedException {
+        long start = System.nanoTime();
+        try {
+            synchronized (pauseLock) {
+                while (paused) {
+                    long remaining = timeoutNanos - (System.nanoTime() - start);
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(pauseLock, remaining);
+                }
+                return true;
+            }
+        } finally {
+            pausedNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * No more chunks are started until {@link #resume}. Chunks already in flight are not affected
+     */
+    public void pause() {
+        paused = true;
+    }
+
+    public void resume() {
+        synchronized (pauseLock) {
+            paused = false;
+            pauseLock.notifyAll();
+        }
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Returns the slot taken for a chunk that is no longer being generated
+     */
+    public void release() {
+        completed.incrementAndGet();
+        inFlight.release();
+    }
+
+    /**
+     * Number of slots returned so far
+     */
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Time spent waiting for the rate limit, summed over all threads that acquired slots
+     */
+    public long getThrottledNanos() {
+        return throttledNanos.sum();
+    }
+
+    /**
+     * Time spent waiting for the generation to be resumed, summed over all threads that acquired slots
+     */
+    public long getPausedNanos() {
+        return pausedNanos.sum();
+    }
+
+    public synchronized int getMaxChunksInFlight() {
+        return maxChunksInFlight;
+    }
+
+    /**
+     * True while no more chunks are allowed in flight than dimensions are generated at once, in which case
+     * each dimension requests its chunks one at a time
+     */
+    public synchronized boolean isSequential() {
+        return maxChunksInFlight <= sequentialChunksInFlight;
+    }
+
+    /**
+     * Chunks already in flight are not affected if the limit is lowered
+     */
+    public synchronized void setMaxChunksInFlight(int maxChunksInFlight) {
+        if (maxChunksInFlight < 1) {
+            throw new IllegalArgumentException("At least one chunk must be allowed in flight");
+        }
+        int difference = maxChunksInFlight - this.maxChunksInFlight;
+        if (difference > 0) {
+            inFlight.release(difference);
+        } else if (difference < 0) {
+            inFlight.reducePermits(-difference);
+        }
+        this.maxChunksInFlight = maxChunksInFlight;
+    }
+
+    /**
+     * @return chunks per second, 0 if there is no limit
+     */
+    public double getMaxGenerationRate() {
+        return maxGenerationRate;
+    }
+
+    /**
+     * @param chunksPerSecond 0 to remove the limit
+     */
+    public void setMaxGenerationRate(double chunksPerSecond) {
+        if (chunksPerSecond < 0) {
+            throw new IllegalArgumentException("Invalid generation rate " + chunksPerSecond);
+        }
+        intervalNanos = chunksPerSecond == 0
+                ? 0L
+                : Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / chunksPerSecond));
+        maxGenerationRate = chunksPerSecond;
+    }
+
+    private synchronized long reserveSlot() {
+        long now = System.nanoTime();
+        if (!started || nextSlot < now) {
+            // Time in which no chunk was started is not made up for with a burst of chunks
+            nextSlot = now;
+            started = true;
+        }
+        long result = nextSlot;
+        nextSlot += intervalNanos;
+        return result;
+    }
+
+    private static final class ResizableSemaphore extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        private ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+import static org.iz.cs.chunker.io.ConsolePrinter.println;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Measures the chunk generation of a run: how long each chunk takes, how many chunks are generated
+ * per second and how many are in flight, and where the time goes when the server is not generating:
+ * waiting for the rate limit, waiting for chunks in flight to complete, pausing for the heap,
+ * being paused and saving the progress. Waiting times are summed over the dimensions generated at the same time.
+ * The time remaining is estimated from the chunks left in the dimensions of the run and the recent rate.
+ * <p>
+ * A summary is printed and written to a JSON file periodically and when the generation ends.
+ */
+public final class GenerationMetrics implements Closeable {
+
+    private static final String METRICS_FILE = "metrics.json";
+    private static final long SAMPLE_MILLIS = 1000L;
+    private static final int SHORT_WINDOW_SECONDS = 10;
+    private static final int LONG_WINDOW_SECONDS = 60;
+
+    private final GenerationBudget budget;
+    private final long intervalSeconds;
+    private final Path file;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder generated = new LongAdder();
+    private final Map<String, LongAdder> generatedByDimension = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final LongAdder heapPauseNanos = new LongAdder();
+    private final LongAdder progressSaveNanos = new LongAdder();
+
+    private volatile List<String> plannedDimensions = Collections.emptyList();
+    private volatile long areaChunks = 0;
+    private final Map<String, Long> totalByDimension = new ConcurrentHashMap<>();
+    private final Set<String> currentDimensions = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService executor;
+    private final long start = System.nanoTime();
+    /**
+     * Number of generated chunks and the time of each of the last samples, one sample per second
+     */
+    private final long[] sampledCounts = new long[LONG_WINDOW_SECONDS + 1];
+    private final long[] sampledTimes = new long[LONG_WINDOW_SECONDS + 1];
+    private int samples = 0;
+
+    /**
+     * @param intervalSeconds seconds between summaries, 0 for a summary only at the end
+     * @param file file the summary is written to
+     */
+    public GenerationMetrics(GenerationBudget budget, long intervalSeconds, Path file) {
+        this.budget = budget;
+        this.intervalSeconds = intervalSeconds;
+        this.file = file;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Chunker Metrics");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static GenerationMetrics fromConfiguration(GenerationBudget budget) {
+        return new GenerationMetrics(budget, Configuration.metricsInterval,
+                Chunker.getChunkerPath().resolve(METRICS_FILE));
+    }
+
+    public void start() {
+        sample();
+        executor.scheduleAtFixedRate(this::sample, SAMPLE_MILLIS, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+        if (intervalSeconds > 0) {
+            executor.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * @param dimensions dimensions that will be generated by this run
+     * @param areaChunks chunks in the area of a dimension, which is counted for the dimensions not started yet
+     */
+    public void setPlan(List<String> dimensions, long areaChunks) {
+        this.areaChunks = areaChunks;
+        this.plannedDimensions = new ArrayList<>(dimensions);
+    }
+
+    /**
+     * @param chunks chunks that will be generated in the dimension, without the ones that are skipped
+     */
+    public void dimensionStarted(String dimension, long chunks) {
+        totalByDimension.put(dimension, chunks);
+        currentDimensions.add(dimension);
+    }
+
+    public void dimensionFinished(String dimension) {
+        currentDimensions.remove(dimension);
+    }
+
+    /**
+     * @return dimensions in which chunks are being generated, in the order of the plan
+     */
+    public List<String> getCurrentDimensions() {
+        List<String> result = new ArrayList<>();
+        for (String dimension : plannedDimensions) {
+            if (currentDimensions.contains(dimension)) {
+                result.add(dimension);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Chunks that will be generated by this run, including the chunks already generated
+     */
+    public long getTotal() {
+        long result = 0;
+        for (String dimension : plannedDimensions) {
+            result += totalByDimension.getOrDefault(dimension, areaChunks);
+        }
+        return result;
+    }
+
+    /**
+     * @return from 0 to 100
+     */
+    public double getProgressPercent() {
+        long total = getTotal();
+        return total == 0 ? 100 : Math.min(100, generated.sum() * 100d / total);
+    }
+
+    /**
+     * @return seconds until all chunks are generated at the rate of the last minute, -1 if nothing is being generated
+     */
+    public double getEstimatedSecondsRemaining() {
+        long remaining = 0;
+        for (String dimension : plannedDimensions) {
+            long total = totalByDimension.getOrDefault(dimension, areaChunks);
+            LongAdder dimensionCount = generatedByDimension.get(dimension);
+            remaining += Math.max(0, total - (dimensionCount == null ? 0 : dimensionCount.sum()));
+        }
+        if (remaining == 0) {
+            return 0;
+        }
+        double rate = getRate(LONG_WINDOW_SECONDS);
+        return rate <= 0 ? -1 : remaining / rate;
+    }
+
+    /**
+     * Called when a chunk is requested from the server
+     * @return the time to give to {@link #chunkCompleted}
+     */
+    public long chunkRequested() {
+        int current = inFlight.incrementAndGet();
+        int max;
+        while (current > (max = maxInFlight.get()) && !maxInFlight.compareAndSet(max, current)) {
+            // another chunk was requested at the same time
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Called when the server completes a requested chunk
+     * @param generated false if the chunk failed
+     */
+    public void chunkCompleted(String dimension, long requestedAt, boolean generated) {
+        inFlight.decrementAndGet();
+        if (!generated) {
+            return;
+        }
+        latency.record(System.nanoTime() - requestedAt);
+        this.generated.increment();
+        LongAdder dimensionCount = generatedByDimension.get(dimension);
+        if (dimensionCount == null) {
+            dimensionCount = generatedByDimension.computeIfAbsent(dimension, d -> new LongAdder());
+        }
+        dimensionCount.increment();
+    }
+
+    /**
+     * Time waited for the budget before requesting a chunk, which includes the wait for the rate limit
+     */
+    public void waitedForBudget(long nanos) {
+        acquireNanos.add(nanos);
+    }
+
+    public void pausedForHeap(long nanos) {
+        heapPauseNanos.add(nanos);
+    }
+
+    public void savedProgress(long nanos) {
+        progressSaveNanos.add(nanos);
+    }
+
+    public long getGenerated() {
+        return generated.sum();
+    }
+
+    /**
+     * @return chunks generated in each dimension in which chunks were generated, in the order of the plan
+     */
+    public Map<String, Long> getGeneratedByDimension() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (String dimension : plannedDimensions) {
+            LongAdder dimensionCount = generatedByDimension.get(dimension);
+            if (dimensionCount != null) {
+                result.put(dimension, dimensionCount.sum());
+            }
+        }
+        return result;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return chunks per second over the last seconds, or since the start if it was more recent
+     */
+    public synchronized double getRate(int seconds) {
+        if (samples < 2) {
+            return getAverageRate();
+        }
+        int last = (samples - 1) % sampledCounts.length;
+        int first = (samples - 1 - Math.min(seconds, samples - 1)) % sampledCounts.length;
+        long nanos = sampledTimes[last] - sampledTimes[first];
+        return nanos <= 0 ? 0 : (sampledCounts[last] - sampledCounts[first]) * 1e9 / nanos;
+    }
+
+    public double getAverageRate() {
+        long nanos = System.nanoTime() - start;
+        return nanos <= 0 ? 0 : generated.sum() * 1e9 / nanos;
+    }
+
+    private synchronized void sample() {
+        int index = samples % sampledCounts.length;
+        sampledCounts[index] = generated.sum();
+        sampledTimes[index] = System.nanoTime();
+        samples++;
+    }
+
+    private void report() {
+        try {
+            Summary summary = summarize();
+            print(summary);
+            write(summary);
+        } catch (RuntimeException e) {
+            Chunker.defaultErr.println("Could not report the generation metrics");
+            e.printStackTrace(Chunker.defaultErr);
+        }
+    }
+
+    private Summary summarize() {
+        Summary summary = new Summary();
+        summary.time = System.currentTimeMillis();
+        summary.elapsedSeconds = seconds(System.nanoTime() - start);
+        summary.chunks = generated.sum();
+        summary.totalChunks = getTotal();
+        summary.chunksByDimension.putAll(getGeneratedByDimension());
+        summary.chunksPerSecond = getAverageRate();
+        summary.chunksPerSecond10s = getRate(SHORT_WINDOW_SECONDS);
+        summary.chunksPerSecond60s = getRate(LONG_WINDOW_SECONDS);
+        summary.estimatedSecondsRemaining = getEstimatedSecondsRemaining();
+        summary.inFlight = inFlight.get();
+        summary.maxInFlight = maxInFlight.get();
+        summary.latencyMeanMillis = latency.getMeanMillis();
+        summary.latencyP50Millis = latency.getPercentileMillis(50);
+        summary.latencyP90Millis = latency.getPercentileMillis(90);
+        summary.latencyP99Millis = latency.getPercentileMillis(99);
+        summary.latencyMaxMillis = latency.getMaxMillis();
+        long throttled = budget.getThrottledNanos();
+        long paused = budget.getPausedNanos();
+        summary.throttledSeconds = seconds(throttled);
+        summary.pausedSeconds = seconds(paused);
+        // The rest of the wait is for a chunk in flight to complete
+        summary.waitingForServerSeconds = seconds(Math.max(0, acquireNanos.sum() - throttled - paused));
+        summary.heapPauseSeconds = seconds(heapPauseNanos.sum());
+        summary.savingProgressSeconds = seconds(progressSaveNanos.sum());
+        return summary;
+    }
+
+    private static void print(Summary summary) {
+        println(String.format("Metrics: %d chunks, %.1f chunks/s (10s), %.1f chunks/s (60s), %d in flight. "
+                + "Latency p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms. "
+                + "Throttled %.1fs, paused %.1fs, waiting for the server %.1fs, paused for the heap %.1fs, "
+                + "saving progress %.1fs",
+                summary.chunks, summary.chunksPerSecond10s, summary.chunksPerSecond60s, summary.inFlight,
+                summary.latencyP50Millis, summary.latencyP90Millis, summary.latencyP99Millis,
+                summary.latencyMaxMillis, summary.throttledSeconds, summary.pausedSeconds,
+                summary.waitingForServerSeconds, summary.heapPauseSeconds, summary.savingProgressSeconds));
+    }
+
+    /**
+     * The file is replaced only once it is completely written, so it can be read at any time
+     */
+    private void write(Summary summary) {
+        Path temporaryPath = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            try (Writer writer = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8)) {
+                LazyLoader.gson.toJson(summary, writer);
+            }
+            try {
+                Files.move(temporaryPath, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryPath, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Chunker.defaultErr.println("Could not write " + file);
+            e.printStackTrace(Chunker.defaultErr);
+        }
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    /**
+     * Stops the periodic summaries and reports the final one
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sample();
+        report();
+    }
+
+    /**
+     * Written as JSON. Times are in milliseconds or seconds as the names say
+     */
+    @SuppressWarnings("unused")
+    private static final class Summary {
+        private long time;
+        private double elapsedSeconds;
+        private long chunks;
+        private long totalChunks;
+        private final Map<String, Long> chunksByDimension = new LinkedHashMap<>();
+        private double chunksPerSecond;
+        private double chunksPerSecond10s;
+        private double chunksPerSecond60s;
+        private double estimatedSecondsRemaining;
+        private int inFlight;
+        private int maxInFlight;
+        private double latencyMeanMillis;
+        private double latencyP50Millis;
+        private double latencyP90Millis;
+        private double latencyP99Millis;
+        private double latencyMaxMillis;
+        private double throttledSeconds;
+        private double pausedSeconds;
+        private double waitingForServerSeconds;
+        private double heapPauseSeconds;
+        private double savingProgressSeconds;
+    }
+
+    private static class LazyLoader {
+        static Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    }
+
+}
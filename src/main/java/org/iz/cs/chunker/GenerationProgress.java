@@ -19,6 +19,7 @@ public final class GenerationProgress {
     private Integer x;
     private Integer z;
     private String dimension;
+    private Integer ring;
 
     public GenerationProgress() {
         //super();
@@ -40,6 +41,14 @@ public final class GenerationProgress {
         this.z = z;
     }
 
+    public Integer getRing() {
+        return ring;
+    }
+
+    public void setRing(Integer ring) {
+        this.ring = ring;
+    }
+
     public String getDimension() {
         return dimension;
     }
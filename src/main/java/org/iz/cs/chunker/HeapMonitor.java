@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+/**
+ * Tells when the heap is close to full. Uses the usage of the heap memory pools after garbage
+ * collection, so that garbage that is yet to be collected does not count. The JVM notifies when
+ * a pool goes over the high watermark, and pressure is relieved once all pools are under the low one.
+ */
+public final class HeapMonitor implements Closeable, NotificationListener {
+
+    private final double highWatermark;
+    private final double lowWatermark;
+    private final List<MemoryPoolMXBean> pools = new ArrayList<>();
+    private final NotificationEmitter emitter;
+
+    private volatile boolean underPressure = false;
+
+    /**
+     * @param highWatermark fraction of a pool, from 0 to 1, over which the heap is under pressure
+     * @param lowWatermark fraction of a pool, from 0 to 1, under which pressure is relieved
+     */
+    public HeapMonitor(double highWatermark, double lowWatermark) {
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP
+                    && pool.isCollectionUsageThresholdSupported()
+                    && pool.getUsage().getMax() > 0) {
+                pools.add(pool);
+            }
+        }
+        this.emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+    }
+
+    public static HeapMonitor fromConfiguration() {
+        return new HeapMonitor(Configuration.heapHighWatermark / 100d, Configuration.heapLowWatermark / 100d);
+    }
+
+    /**
+     * @return false if the garbage collector does not report the usage of its pools after collection
+     */
+    public boolean isSupported() {
+        return !pools.isEmpty();
+    }
+
+    public void start() {
+        emitter.addNotificationListener(this, null, null);
+        for (MemoryPoolMXBean pool : pools) {
+            pool.setCollectionUsageThreshold((long) (pool.getUsage().getMax() * highWatermark));
+        }
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+            underPressure = true;
+        }
+    }
+
+    /**
+     * Cheap enough to be called for every chunk
+     */
+    public boolean isUnderPressure() {
+        return underPressure;
+    }
+
+    /**
+     * Checks if all pools are under the low watermark after the last garbage collection
+     */
+    public boolean isRelieved() {
+        for (MemoryPoolMXBean pool : pools) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null && usage.getUsed() > usage.getMax() * lowWatermark) {
+                return false;
+            }
+        }
+        underPressure = false;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        for (MemoryPoolMXBean pool : pools) {
+            pool.setCollectionUsageThreshold(0);
+        }
+        try {
+            emitter.removeNotificationListener(this);
+        } catch (ListenerNotFoundException e) {
+            // not started
+        }
+    }
+
+}
@@ -15,6 +15,10 @@
  */
 package org.iz.cs.chunker;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -22,35 +26,76 @@ import java.net.JarURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
-import org.iz.cs.chunker.minecraft.Constants;
+/**
+ * Loads the classes of the server jar. Class files are read through a {@link JarIndex}, so the jar
+ * is opened once and not for each class. Resources are still found by {@link URLClassLoader}.
+ * Classes can be loaded by many threads at the same time.
+ */
+public class JarClassLoader extends URLClassLoader {
 
-import javassist.ByteArrayClassPath;
-import javassist.ClassPath;
-import javassist.ClassPool;
-import javassist.CtClass;
-import javassist.CtConstructor;
-import javassist.CtField;
-import javassist.Modifier;
-import javassist.NotFoundException;
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
 
-public class JarClassLoader extends URLClassLoader implements ClassPath {
+    private static final String DECORATED_EXTENSION = ".decorated";
+    private static final int DECORATED_MAGIC = 0x43484B44;
+    private static final String HASH_ALGORITHM = "SHA-256";
 
     private URL url;
+    private CodeSource codeSource;
+    private Manifest manifest;
+    private URL jarUrl;
+
+    /**
+     * null if the jar could not be indexed, then classes are read through the {@link JarFile}
+     */
+    private JarIndex index;
+
+    /**
+     * Packages defined by this loader. {@link ClassLoader#getPackage} is deprecated after Java 8
+     * and its replacement does not exist in Java 8
+     */
+    private final Set<String> definedPackages = ConcurrentHashMap.newKeySet();
 
     private String classNameToDecorate;
+    private String readyClassName;
+    private String readyFieldName;
 
     public JarClassLoader(String jarLocation) throws MalformedURLException {
-        this(new URL("jar:" + new File(jarLocation).toURI().toString() + "!/"));
+        this(new File(jarLocation), new URL("jar:" + new File(jarLocation).toURI().toString() + "!/"));
     }
 
-    private JarClassLoader(URL url) {
+    private JarClassLoader(File jar, URL url) throws MalformedURLException {
         super(new URL[] { url },
                 JarClassLoader.class.getClassLoader());
         this.url = url;
+        this.jarUrl = jar.toURI().toURL();
+        this.codeSource = new CodeSource(jarUrl, (CodeSigner[]) null);
+        try {
+            this.manifest = getJarFile().getManifest();
+        } catch (IOException e) {
+            this.manifest = null;
+        }
+        try {
+            this.index = JarIndex.open(jar.toPath());
+        } catch (IOException e) {
+            Chunker.defaultErr.println("Could not index " + jar + ": " + e.getMessage());
+            this.index = null;
+        }
     }
 
     public JarFile getJarFile() throws IOException {
@@ -61,28 +106,146 @@ public class JarClassLoader extends URLClassLoader implements ClassPath {
         this.classNameToDecorate = classNameToDecorate;
     }
 
+    /**
+     * The class will be modified to signal {@link org.iz.cs.chunker.minecraft.ServerReadiness}
+     * when it sets the field
+     */
+    public void setReadyField(String className, String fieldName) {
+        this.readyClassName = className;
+        this.readyFieldName = fieldName;
+    }
+
+    String getClassNameToDecorate() {
+        return classNameToDecorate;
+    }
+
+    String getReadyClassName() {
+        return readyClassName;
+    }
+
+    String getReadyFieldName() {
+        return readyFieldName;
+    }
+
     public String getMain() throws IOException {
-        JarURLConnection uc = (JarURLConnection) url.openConnection();
-        Attributes attr = uc.getMainAttributes();
+        Attributes attr = manifest != null
+                ? manifest.getMainAttributes()
+                : null;
         return attr != null
                 ? attr.getValue(Attributes.Name.MAIN_CLASS)
                 : null;
     }
 
+    /**
+     * Loads, without initializing them, the classes of the jar that are in the default package,
+     * where the obfuscated classes of the server are, or under the package of the main class. Can be run while
+     * the server starts, so that when the server needs a class it is often already loaded.
+     * Must not be called before the classes to decorate are set
+     */
+    public void preloadClasses() throws IOException {
+        if (index == null) {
+            return;
+        }
+        String main = getMain();
+        String mainPackage = main != null && main.lastIndexOf('.') > 0
+                ? main.substring(0, main.lastIndexOf('.') + 1)
+                : "";
+        for (String name : index.getClassNames()) {
+            if (name.lastIndexOf('.') >= 0 && !name.startsWith(mainPackage)) {
+                continue;
+            }
+            try {
+                Class.forName(name, false, this);
+            } catch (ClassNotFoundException | LinkageError e) {
+                // Only a few classes can not be loaded. The server will not use them either
+            }
+        }
+    }
+
     @Override
     protected Class<?> findClass(String name) throws ClassNotFoundException {
-        if (classNameToDecorate.equals(name)) {
+        Class<?> result = findJarClass(name);
+        if (result == null) {
+            throw new ClassNotFoundException(name);
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #findClass}, but does not throw when the class is not in the jar,
+     * as that is expected for all classes of the libraries of the chunker
+     */
+    private Class<?> findJarClass(String name) throws ClassNotFoundException {
+        byte[] classFile;
+        try {
+            classFile = readClassFile(name);
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+        if (classFile == null) {
+            return null;
+        }
+        if (name.equals(classNameToDecorate) || name.equals(readyClassName)) {
             try {
-                InputStream is = this.getResourceAsStream(name.replace('.', '/') + ".class");
-                byte[] classFile = readStream(is);
-                classFile = decorate(name, classFile);
-                return defineClass(name, classFile, 0, classFile.length);
+                classFile = getDecorated(name, classFile);
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
         }
+        definePackageOf(name);
+        return defineClass(name, classFile, 0, classFile.length, codeSource);
+    }
+
+    private byte[] readClassFile(String name) throws IOException {
+        if (index != null) {
+            return index.readClass(name);
+        }
+        JarFile jarFile = getJarFile();
+        JarEntry entry = jarFile.getJarEntry(name.replace('.', '/') + ".class");
+        if (entry == null) {
+            return null;
+        }
+        try (InputStream is = jarFile.getInputStream(entry)) {
+            if (entry.getSize() >= 0) {
+                byte[] result = new byte[(int) entry.getSize()];
+                new DataInputStream(is).readFully(result);
+                return result;
+            }
+            return readStream(is);
+        }
+    }
 
-        return super.findClass(name);
+    private static byte[] readStream(InputStream is) throws IOException {
+        byte[] result = new byte[8192];
+        int length = 0;
+        int read;
+        while ((read = is.read(result, length, result.length - length)) >= 0) {
+            length += read;
+            if (length == result.length) {
+                result = Arrays.copyOf(result, result.length * 2);
+            }
+        }
+        return Arrays.copyOf(result, length);
+    }
+
+    private void definePackageOf(String className) {
+        int lastDot = className.lastIndexOf('.');
+        if (lastDot < 0) {
+            return;
+        }
+        String packageName = className.substring(0, lastDot);
+        if (!definedPackages.add(packageName)) {
+            return;
+        }
+        try {
+            if (manifest != null) {
+                definePackage(packageName, manifest, jarUrl);
+            } else {
+                definePackage(packageName, null, null, null, null, null, null, null);
+            }
+        } catch (IllegalArgumentException e) {
+            // Defined by another thread in the meantime
+        }
     }
 
     @Override
@@ -91,9 +254,7 @@ public class JarClassLoader extends URLClassLoader implements ClassPath {
             // First, check if the class has already been loaded
             Class<?> c = findLoadedClass(name);
             if (c == null && !delegateToParent(name)) {
-                try {
-                    c = findClass(name);
-                } catch (ClassNotFoundException e) {}
+                c = findJarClass(name);
             }
             if (c == null) {
                 c = getParent().loadClass(name);
@@ -105,7 +266,7 @@ public class JarClassLoader extends URLClassLoader implements ClassPath {
         }
     }
 
-    private boolean delegateToParent(String name) {
+    static boolean delegateToParent(String name) {
         return name.startsWith("java.")
                 || name.startsWith("javax.")
                 || name.startsWith("sun.")
@@ -113,95 +274,61 @@ public class JarClassLoader extends URLClassLoader implements ClassPath {
                 || name.startsWith("org.w3c.");
     }
 
-    private static byte[] readStream(InputStream fin) throws IOException {
-        byte[][] bufs = new byte[8][];
-        int bufsize = 4096;
+    /**
+     * Decorated classes are saved with the hash of the original class, so that a class decorated
+     * for one server jar is not used with another one, and with the version of the decoration
+     */
+    private byte[] getDecorated(String name, byte[] classFile) throws Exception {
+        byte[] hash = MessageDigest.getInstance(HASH_ALGORITHM).digest(classFile);
+        Path cachePath = Chunker.getChunkerPath().resolve(name + DECORATED_EXTENSION);
 
-        for (int i = 0; i < 8; ++i) {
-            bufs[i] = new byte[bufsize];
-            int size = 0;
-            int len = 0;
-            do {
-                len = fin.read(bufs[i], size, bufsize - size);
-                if (len >= 0)
-                    size += len;
-                else {
-                    byte[] result = new byte[bufsize - 4096 + size];
-                    int s = 0;
-                    for (int j = 0; j < i; ++j) {
-                        System.arraycopy(bufs[j], 0, result, s, s + 4096);
-                        s = s + s + 4096;
-                    }
-
-                    System.arraycopy(bufs[i], 0, result, s, size);
-                    return result;
-                }
-            } while (size < bufsize);
-            bufsize *= 2;
+        byte[] result = readDecorated(cachePath, hash);
+        if (result == null) {
+            result = new ClassDecorator(this).decorate(name, classFile);
+            writeDecorated(cachePath, hash, result);
         }
-
-        throw new IOException("too much data");
+        return result;
     }
 
-    private byte[] decorate(String name, byte[] classFile) throws Exception {
-        ClassPool cp = new ClassPool();
-
-        cp.insertClassPath(new ByteArrayClassPath(name, classFile));
-        cp.insertClassPath(this);
-        cp.appendSystemPath();
-        CtClass sc = cp.get(name);
-
-        CtField field = new CtField(sc, "instance", sc);
-        field.setModifiers(Modifier.STATIC | Modifier.PUBLIC | Modifier.VOLATILE);
-        sc.addField(field);
-
-        for (CtConstructor scc : sc.getDeclaredConstructors()) {
-            scc.insertAfter("this." + Constants.INSTANCE + " = this;");
+    private static byte[] readDecorated(Path cachePath, byte[] hash) {
+        if (!Files.exists(cachePath)) {
+            return null;
         }
-
-        byte[] bc = sc.toBytecode();
-        return bc;
-    }
-
-    @Override
-    public URL find(String classname) {
-        try {
-            URLConnection con = openClassfile0(classname);
-            if (con == null) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cachePath)))) {
+            if (in.readInt() != DECORATED_MAGIC || in.readInt() != ClassDecorator.DECORATION_VERSION) {
                 return null;
             }
-            InputStream is = con.getInputStream();
-            if (is != null) {
-                is.close();
-                return con.getURL();
-            } else {
-                throw new RuntimeException();
+            byte[] savedHash = new byte[in.readUnsignedByte()];
+            in.readFully(savedHash);
+            if (!Arrays.equals(hash, savedHash)) {
+                return null;
             }
-        }
-        catch (IOException e) {}
-        return null;
-    }
-
-    private URLConnection openClassfile0(String name) throws IOException {
-        if (delegateToParent(name)) {
-            return getParent().getResource(name.replace('.', '/') + ".class").openConnection();
-        }
-        URL r = findResource(name.replace('.', '/') + ".class");
-        if (r == null) {
+            byte[] result = new byte[in.readInt()];
+            in.readFully(result);
+            return result;
+        } catch (IOException e) {
             return null;
         }
-        return r.openConnection();
     }
 
-    @Override
-    public InputStream openClassfile(String classname) throws NotFoundException {
+    private static void writeDecorated(Path cachePath, byte[] hash, byte[] classFile) {
+        Path temporaryPath = cachePath.resolveSibling(cachePath.getFileName() + ".tmp");
         try {
-            URLConnection con = openClassfile0(classname);
-            if (con != null) {
-                return con.getInputStream();
+            Files.createDirectories(cachePath.toAbsolutePath().getParent());
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+                out.writeInt(DECORATED_MAGIC);
+                out.writeInt(ClassDecorator.DECORATION_VERSION);
+                out.writeByte(hash.length);
+                out.write(hash);
+                out.writeInt(classFile.length);
+                out.write(classFile);
             }
-        } catch (IOException e) {}
-        return null;        // not found
+            Files.move(temporaryPath, cachePath, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // The class will be decorated again next time
+            Chunker.defaultErr.println("Could not save decorated class " + cachePath);
+        }
     }
 
 }
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The class files of a jar, found by reading its central directory once. The jar is memory-mapped,
+ * so class files are read without opening the jar again, each into an array of its exact size.
+ * Can be used by many threads at the same time.
+ * <p>
+ * Only plain zip files are supported. Zip64 jars, which are larger than 4GB or have more
+ * than 65535 entries, are not.
+ */
+final class JarIndex {
+
+    private static final int END_SIGNATURE = 0x06054B50;
+    private static final int END_SIZE = 22;
+    private static final int ENTRY_SIGNATURE = 0x02014B50;
+    private static final int ENTRY_SIZE = 46;
+    private static final int LOCAL_SIGNATURE = 0x04034B50;
+    private static final int LOCAL_SIZE = 30;
+    private static final int MAX_COMMENT = 0xFFFF;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private static final String CLASS_EXTENSION = ".class";
+
+    private final ByteBuffer buffer;
+    private final Map<String, Entry> classes;
+    private final ConcurrentLinkedQueue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+
+    private JarIndex(ByteBuffer buffer, Map<String, Entry> classes) {
+        this.buffer = buffer;
+        this.classes = classes;
+    }
+
+    /**
+     * @throws IOException if the file can not be read or is not a jar that is supported
+     */
+    static JarIndex open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < END_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Unsupported jar size " + channel.size());
+            }
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return new JarIndex(buffer, readCentralDirectory(buffer));
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt jar " + path, e);
+        }
+    }
+
+    private static Map<String, Entry> readCentralDirectory(ByteBuffer buffer) throws IOException {
+        int end = findEnd(buffer);
+        int count = buffer.getShort(end + 10) & 0xFFFF;
+        long directoryOffset = buffer.getInt(end + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || directoryOffset == 0xFFFFFFFFL) {
+            throw new IOException("Zip64 jars are not supported");
+        }
+
+        Map<String, Entry> result = new HashMap<>(count * 4 / 3 + 1);
+        int position = (int) directoryOffset;
+        byte[] name = new byte[256];
+        for (int i = 0; i < count; i++) {
+            if (buffer.getInt(position) != ENTRY_SIGNATURE) {
+                throw new IOException("Corrupt central directory");
+            }
+            int method = buffer.getShort(position + 10) & 0xFFFF;
+            int compressedSize = buffer.getInt(position + 20);
+            int size = buffer.getInt(position + 24);
+            int nameLength = buffer.getShort(position + 28) & 0xFFFF;
+            int extraLength = buffer.getShort(position + 30) & 0xFFFF;
+            int commentLength = buffer.getShort(position + 32) & 0xFFFF;
+            int localOffset = buffer.getInt(position + 42);
+
+            if (nameLength > name.length) {
+                name = new byte[nameLength];
+            }
+            for (int j = 0; j < nameLength; j++) {
+                name[j] = buffer.get(position + ENTRY_SIZE + j);
+            }
+            String entryName = new String(name, 0, nameLength, StandardCharsets.UTF_8);
+            if (entryName.endsWith(CLASS_EXTENSION)) {
+                if (compressedSize < 0 || size < 0 || localOffset < 0) {
+                    throw new IOException("Zip64 jars are not supported");
+                }
+                result.put(entryName, new Entry(localOffset, method, compressedSize, size));
+            }
+            position += ENTRY_SIZE + nameLength + extraLength + commentLength;
+        }
+        return result;
+    }
+
+    /**
+     * Finds the end of central directory record, which is followed only by the comment of the jar
+     */
+    private static int findEnd(ByteBuffer buffer) throws IOException {
+        int last = buffer.limit() - END_SIZE;
+        int first = Math.max(0, last - MAX_COMMENT);
+        for (int position = last; position >= first; position--) {
+            if (buffer.getInt(position) == END_SIGNATURE
+                    && position + END_SIZE + (buffer.getShort(position + 20) & 0xFFFF) == buffer.limit()) {
+                return position;
+            }
+        }
+        throw new IOException("Not a jar file");
+    }
+
+    /**
+     * @return binary names of all classes of the jar
+     */
+    List<String> getClassNames() {
+        List<String> result = new ArrayList<>(classes.size());
+        for (String entryName : classes.keySet()) {
+            result.add(entryName.substring(0, entryName.length() - CLASS_EXTENSION.length()).replace('/', '.'));
+        }
+        return result;
+    }
+
+    /**
+     * @param name binary name of the class
+     * @return the class file, null if the jar does not have it
+     */
+    byte[] readClass(String name) throws IOException {
+        Entry entry = classes.get(name.replace('.', '/').concat(CLASS_EXTENSION));
+        if (entry == null) {
+            return null;
+        }
+        int local = entry.localOffset;
+        if (buffer.getInt(local) != LOCAL_SIGNATURE) {
+            throw new IOException("Corrupt entry of " + name);
+        }
+        // The local header can have a different extra field than the central directory
+        int data = local + LOCAL_SIZE
+                + (buffer.getShort(local + 26) & 0xFFFF)
+                + (buffer.getShort(local + 28) & 0xFFFF);
+
+        ByteBuffer source = buffer.duplicate();
+        source.position(data);
+        switch (entry.method) {
+        case STORED:
+            byte[] result = new byte[entry.size];
+            source.get(result);
+            return result;
+        case DEFLATED:
+            byte[] compressed = new byte[entry.compressedSize];
+            source.get(compressed);
+            return inflate(name, compressed, entry.size);
+        default:
+            throw new IOException("Unsupported compression method " + entry.method + " of " + name);
+        }
+    }
+
+    private byte[] inflate(String name, byte[] compressed, int size) throws IOException {
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        try {
+            byte[] result = new byte[size];
+            inflater.setInput(compressed);
+            int length = 0;
+            while (length < size) {
+                int inflated = inflater.inflate(result, length, size - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != size) {
+                throw new IOException("Corrupt entry of " + name);
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt entry of " + name, e);
+        } finally {
+            inflater.reset();
+            inflaters.offer(inflater);
+        }
+    }
+
+    private static final class Entry {
+        private final int localOffset;
+        private final int method;
+        private final int compressedSize;
+        private final int size;
+
+        private Entry(int localOffset, int method, int compressedSize, int size) {
+            this.localOffset = localOffset;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+        }
+    }
+
+}
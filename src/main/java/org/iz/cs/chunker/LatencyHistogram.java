@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in buckets whose width grows with the duration, like an HDR histogram, so that
+ * any percentile is known to within about 3% while the histogram has a fixed size.
+ * Durations are counted in microseconds, from 0 to about 38 hours. Longer ones are counted as the longest.
+ * <p>
+ * Recording does not lock, so it can be called by many threads for every chunk.
+ * Reading while durations are recorded gives values that may be off by the durations being recorded.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Each power of two is split in 2^SUB_BUCKET_BITS buckets
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long micros = Math.min(MAX_VALUE, Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+        counts.incrementAndGet(bucket(micros));
+        count.incrementAndGet();
+        sum.addAndGet(micros);
+        long currentMax;
+        while (micros > (currentMax = max.get()) && !max.compareAndSet(currentMax, micros)) {
+            // another thread recorded at the same time
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getMeanMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() / (n * 1000d);
+    }
+
+    /**
+     * Sum of all recorded durations
+     */
+    public double getTotalMillis() {
+        return sum.get() / 1000d;
+    }
+
+    /**
+     * @return number of recorded durations that are not longer than the given one. Durations in the same
+     * bucket as the given one are counted only if the whole bucket is not longer
+     */
+    public long getCountAtOrBelow(double millis) {
+        long micros = (long) (millis * 1000);
+        long result = 0;
+        for (int i = 0; i < BUCKETS && getUpperBound(i) - 1 <= micros; i++) {
+            result += counts.get(i);
+        }
+        return result;
+    }
+
+    public double getMaxMillis() {
+        return max.get() / 1000d;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return the duration that this percent of the recorded durations do not exceed, 0 if none were recorded
+     */
+    public double getPercentileMillis(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                // The highest duration of the bucket, but not more than was actually recorded
+                return Math.min(getUpperBound(i) - 1, max.get()) / 1000d;
+            }
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * Values under 2 * SUB_BUCKETS have a bucket each. Larger values are shifted right until only
+     * SUB_BUCKET_BITS bits are left under the highest one
+     */
+    private static int bucket(long micros) {
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = Math.max(0, exponent - SUB_BUCKET_BITS);
+        return (shift << SUB_BUCKET_BITS) + (int) (micros >>> shift);
+    }
+
+    /**
+     * @return the first value, in microseconds, that is after the bucket
+     */
+    private static long getUpperBound(int bucket) {
+        int shift = Math.max(0, (bucket >> SUB_BUCKET_BITS) - 1);
+        long subBucket = bucket - (shift << SUB_BUCKET_BITS);
+        return (subBucket + 1) << shift;
+    }
+
+}
@@ -22,14 +22,17 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.List;
+import java.nio.file.StandardOpenOption;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
 
 import com.google.gson.Gson;
 
@@ -38,53 +41,53 @@ public class Mapping {
     private static final String VERSION_MANIFEST_JSON = "version_manifest.json";
     private static final String VERSIONS_MANIFEST_URL = "https://launchermeta.mojang.com/mc/game/version_manifest.json";
 
-    private static final String NAME = ".name";
-    private static final String METHOD = "m";
-    private static final String FIELD = "f";
+    private static final String MAPPING_EXTENSION = ".txt";
+    private static final String CACHE_EXTENSION = ".bin";
 
-    private static volatile Map<String, Object> cachedManifest;
+    private static final String VERSION_INDEX = "version_manifest.idx";
 
-    private Map<String, Map<String, String>> map;
+    private static volatile VersionIndex cachedVersionIndex;
 
-    private Mapping(Map<String, Map<String, String>> map) {
-        this.map = map;
+    private static final Set<Path> cachesBeingWritten = ConcurrentHashMap.newKeySet();
+
+    private final MappingIndex index;
+
+    private Mapping(MappingIndex index) {
+        this.index = index;
     }
 
     public String getClassName(String originalClass) {
-        return map.get(originalClass).get(NAME);
+        return index.getClass(originalClass).get(MappingParser.NAME);
     }
 
     public String getField(String originalClass, String originalField) {
-        return map.get(originalClass).get(FIELD + " " + originalField);
+        return index.getClass(originalClass).get(MappingParser.fieldKey(originalField));
     }
 
     public String getMethod(String originalClass, String originalMethod) {
-        return map.get(originalClass).get(METHOD + " " + originalMethod);
+        return index.getClass(originalClass).get(MappingParser.methodKey(originalMethod));
     }
 
     public boolean checkClass(String originalClass) {
-        return map.containsKey(originalClass);
+        return index.contains(originalClass);
     }
 
     public String getMethod(String originalClass, String originalMethod, String...parameters) {
-        StringBuilder builder = new StringBuilder();
-        builder.append(METHOD);
-        builder.append(" ");
-        builder.append(originalMethod);
-        if (parameters.length > 0) {
-            builder.append(" ");
-            builder.append(parameters[0]);
-            for (int i = 1; i < parameters.length; i++) {
-                builder.append(",");
-                builder.append(parameters[i]);
-            }
-        }
-        return map.get(originalClass).get(builder.toString());
+        return index.getClass(originalClass).get(MappingParser.methodKey(originalMethod, parameters));
     }
 
     public static Mapping getMappingFor(String versionId) {
+        return fromFile(downloadMapping(versionId), versionId);
+    }
+
+    /**
+     * Downloads the client.json and the mapping of the version, unless they are already downloaded
+     *
+     * @return path to the mapping file
+     */
+    public static Path downloadMapping(String versionId) {
         try {
-            return getMappingForInternal(versionId);
+            return downloadMappingInternal(versionId);
         } catch (MalformedURLException | URISyntaxException e) {
             // This should not happen
             throw new IllegalStateException("A URL was invalid");
@@ -93,15 +96,15 @@ public class Mapping {
         }
     }
 
-    public static Mapping fromFile(Path path) {
+    public static Mapping fromFile(Path path, String versionId) {
         try {
-            return loadMapping(path);
+            return loadMapping(path, versionId);
         } catch (IOException e) {
             throw new IllegalStateException("Error reading mapping file", e);
         }
     }
 
-    private static Mapping getMappingForInternal(String versionId)
+    private static Path downloadMappingInternal(String versionId)
             throws URISyntaxException, InterruptedException, MalformedURLException {
         Path chunkerPath = Chunker.getChunkerPath();
 
@@ -127,11 +130,7 @@ public class Mapping {
             downloadToFile(mappingUrl, mappingPath);
         }
 
-        try {
-            return loadMapping(mappingPath);
-        } catch (IOException e) {
-            throw new IllegalStateException("Error reading mapping file", e);
-        }
+        return mappingPath;
     }
 
     private static Path getManifestJsonPath() {
@@ -153,39 +152,25 @@ public class Mapping {
         }
     }
 
-    @SuppressWarnings("unchecked")
     private static String getClientJsonUrl(String versionId, boolean forced)
             throws URISyntaxException, InterruptedException {
-        Map<String, Object> manifest = readManifestJson();
-        List<Object> versionsList = (List<Object>) manifest.get("versions");
-        Map<String, Object> version = null;
-        for (Object object : versionsList) {
-            Map<String, Object> current = (Map<String, Object>) object;
-            if (current.get("id").equals(versionId)) {
-                version = current;
-                break;
-            }
-        }
-        if (version == null) {
+        String url = getVersionIndex().getUrl(versionId);
+        if (url == null) {
             if (forced) {
                 // I am too lazy to handle this in a better way
                 throw new IllegalArgumentException("Version not found. It may not be supported: " + versionId);
             }
-            try {
-                downloadToFile(VERSIONS_MANIFEST_URL, getManifestJsonPath());
-            } catch (IOException e) {
-                throw new IllegalStateException("Could not read " + VERSION_MANIFEST_JSON + " file", e);
-            }
+            downloadManifest();
             return getClientJsonUrl(versionId, true);
         }
 
-        return (String) version.get("url");
+        return url;
 
     }
 
     private static void downloadManifest() {
         println("Downloading versions manifest");
-        cachedManifest = null;
+        cachedVersionIndex = null;
         try {
             downloadToFile(VERSIONS_MANIFEST_URL, getManifestJsonPath());
         } catch (MalformedURLException | URISyntaxException | InterruptedException e) {
@@ -194,9 +179,21 @@ public class Mapping {
 
     }
 
-    public static Map<String, Object> readManifestJson() {
-        if (cachedManifest != null) {
-            return cachedManifest;
+    /**
+     * The versions of the launcher manifest. The manifest is downloaded if there is none
+     */
+    public static VersionIndex getVersionIndex() {
+        return getVersionIndex(Chunker.getChunkerPath().resolve(VERSION_INDEX));
+    }
+
+    /**
+     * The versions of the launcher manifest, with the index of the manifest kept in the given file.
+     * The first call decides where the index is kept
+     */
+    public static VersionIndex getVersionIndex(Path indexPath) {
+        VersionIndex result = cachedVersionIndex;
+        if (result != null) {
+            return result;
         }
 
         Path manifestPath = getManifestJsonPath();
@@ -204,78 +201,68 @@ public class Mapping {
             downloadManifest();
         }
 
-        try (BufferedReader reader = Files.newBufferedReader(manifestPath)) {
-            @SuppressWarnings("unchecked")
-            Map<String, Object> result = LazyLoader.gson.fromJson(reader, Map.class);
-            if (result != null) {
-                cachedManifest = result;
-            }
-            return result;
-        } catch (IOException e) {
+        try {
+            result = VersionIndex.forManifest(indexPath, manifestPath);
+        } catch (IOException | IllegalStateException e) {
+            // Gson throws IllegalStateException for unexpected JSON
             throw new IllegalStateException("Could not read " + VERSION_MANIFEST_JSON + " file", e);
         }
+        cachedVersionIndex = result;
+        return result;
     }
 
-    private static Mapping loadMapping(Path mappingPath) throws IOException {
-
-        Map<String, Map<String, String>> mapping = new HashMap<>();
-        try (BufferedReader br = Files.newBufferedReader(mappingPath)) {
-            HashMap<String, String> currentClassMap = null;
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.startsWith("#")) {
-                    continue;
-                }
-                if (line.startsWith(" ")) {
-                    Matcher matcher = LazyLoader.fieldPattern.matcher(line);
-                    boolean isField = matcher.matches();
-                    if (isField) {
-                        currentClassMap.put(FIELD + " " + matcher.group("name"), matcher.group("obfuscatedName"));
-                        continue;
-                    }
-                    matcher = LazyLoader.methodPattern.matcher(line);
-                    boolean isMethod = matcher.matches();
-                    if (isMethod) {
-                        String parameters = matcher.group("parameters");
-                        String key = METHOD + " " + matcher.group("name");
-                        if (!parameters.isEmpty()) {
-                            key = key + " " + parameters;
-                        }
-                        currentClassMap.put(key, matcher.group("obfuscatedName"));
-                        continue;
+    /**
+     * Uses the binary cache of the mapping if there is one for the same content, otherwise indexes the
+     * mapping file and creates the cache in the background
+     */
+    private static Mapping loadMapping(Path mappingPath, String versionId) throws IOException {
+        try (FileChannel channel = FileChannel.open(mappingPath, StandardOpenOption.READ)) {
+            // Stays mapped after the channel is closed. Members are read from it when they are requested
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            long size = buffer.capacity();
+            long modified = Files.getLastModifiedTime(mappingPath).toMillis();
+
+            Path cachePath = getCachePath(mappingPath);
+            MappingIndex cached = BinaryMappingIndex.open(cachePath, versionId, size, modified, () -> hash(buffer));
+            if (cached != null) {
+                return new Mapping(cached);
+            }
+
+            TextMappingIndex index = TextMappingIndex.build(buffer);
+            if (cachesBeingWritten.add(cachePath)) {
+                Thread t = new Thread(() -> {
+                    try {
+                        BinaryMappingIndex.write(cachePath, versionId, size, modified, hash(buffer), index);
+                    } catch (IOException | RuntimeException e) {
+                        println("Could not save the mapping cache " + cachePath
+                                + ". The mapping will be read again next time");
+                    } finally {
+                        cachesBeingWritten.remove(cachePath);
                     }
-                } else {
-                    String[] split = line.split(" -> ");
-                    currentClassMap = new HashMap<String, String>();
-                    currentClassMap.put(NAME, split[1].substring(0, split[1].length() - 1));
-                    mapping.put(split[0], currentClassMap);
-                }
+                }, "Chunker Mapping Cache");
+                t.setDaemon(true);
+                t.start();
             }
+            return new Mapping(index);
         }
-        return new Mapping(mapping);
+    }
+
+    private static long hash(MappedByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        return crc.getValue();
+    }
+
+    private static Path getCachePath(Path mappingPath) {
+        String name = mappingPath.getFileName().toString();
+        if (name.endsWith(MAPPING_EXTENSION)) {
+            name = name.substring(0, name.length() - MAPPING_EXTENSION.length());
+        }
+        return mappingPath.resolveSibling(name + CACHE_EXTENSION);
     }
 
     private static class LazyLoader {
         static Gson gson = new Gson();
-
-        static Pattern fieldPattern = Pattern.compile(
-                "\\s+"
-                + "(?<type>[a-zA-Z0-9_$.]+(?:\\[\\])*)"
-                + " "
-                + "(?<name>[$a-zA-Z0-9_]+)"
-                + " -> "
-                + "(?<obfuscatedName>[a-zA-Z0-9_]+)");
-        static Pattern methodPattern = Pattern.compile(
-                "\\s+"
-                + "(?:\\d+:\\d+:)?"
-                + "(?<retunType>[a-zA-Z0-9_$.]+(?:\\[\\])*)"
-                + " "
-                + "(?<name>[a-zA-Z0-9_$<>]+)"
-                + "\\("
-                + "(?<parameters>(?:[a-zA-Z0-9_$.]+(?:\\[\\])*)?(?:,[a-zA-Z0-9_$.]+(?:\\[\\])*)*)"
-                + "\\)"
-                + " -> "
-                + "(?<obfuscatedName>[a-zA-Z0-9_$<>]+)");
     }
 
 }
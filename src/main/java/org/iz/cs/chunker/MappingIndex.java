@@ -0,0 +1,34 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+import java.util.Map;
+
+/**
+ * Classes of a mapping by their original names. The members of a class are stored by the keys
+ * built by {@link MappingParser#fieldKey} and {@link MappingParser#methodKey}, and its obfuscated
+ * name under {@link MappingParser#NAME}.
+ */
+interface MappingIndex {
+
+    /**
+     * @return null if the class is not in the mapping
+     */
+    Map<String, String> getClass(String originalClass);
+
+    boolean contains(String originalClass);
+
+}
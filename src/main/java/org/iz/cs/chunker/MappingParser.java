@@ -0,0 +1,320 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parses a ProGuard mapping file directly from its bytes, without creating a String for each line.
+ * Only the names that are kept are turned into Strings. Finding the classes and reading the members
+ * of a class are separate, so only the classes that are used need to be read.
+ * <p>
+ * Classes are lines like {@code net.minecraft.Foo -> abc:}. Members are indented lines below
+ * their class, like {@code int bar -> a} for fields and {@code 1:5:void baz(int,java.lang.String) -> b}
+ * for methods. Members are stored by keys built by {@link #fieldKey} and {@link #methodKey}.
+ */
+final class MappingParser {
+
+    static final String NAME = ".name";
+    private static final byte FIELD = 'f';
+    private static final byte METHOD = 'm';
+
+    private static final byte[] ARROW = " -> ".getBytes(StandardCharsets.US_ASCII);
+
+    private final ByteBuffer buffer;
+    private final int limit;
+    private byte[] scratch = new byte[256];
+
+    /**
+     * @param buffer the content of the mapping file, from position 0 to its limit
+     */
+    MappingParser(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.limit = buffer.limit();
+    }
+
+    static String fieldKey(String field) {
+        return (char) FIELD + " " + field;
+    }
+
+    static String methodKey(String method, String... parameters) {
+        StringBuilder builder = new StringBuilder();
+        builder.append((char) METHOD);
+        builder.append(' ');
+        builder.append(method);
+        if (parameters.length > 0) {
+            builder.append(' ');
+            builder.append(parameters[0]);
+            for (int i = 1; i < parameters.length; i++) {
+                builder.append(',');
+                builder.append(parameters[i]);
+            }
+        }
+        return builder.toString();
+    }
+
+    interface ClassVisitor {
+        /**
+         * @param offset where the line of the class starts
+         * @param hash hash code of the original name of the class, same as the hash code of the String
+         */
+        void visit(int offset, int hash);
+    }
+
+    /**
+     * Finds the lines of all classes. The lines of members are skipped without being parsed
+     */
+    void scanClasses(ClassVisitor visitor) {
+        int position = 0;
+        while (position < limit) {
+            int end = lineEnd(position);
+            if (isClassLine(position)) {
+                int arrow = indexOfArrow(position, trimEnd(position, end));
+                if (arrow >= 0) {
+                    visitor.visit(position, hash(position, arrow));
+                }
+            }
+            position = end + 1;
+        }
+    }
+
+    /**
+     * Checks if the class with the line at the offset has the original name
+     */
+    boolean hasName(int offset, String name) {
+        int arrow = indexOfArrow(offset, trimEnd(offset, lineEnd(offset)));
+        if (arrow - offset != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if ((buffer.get(offset + i) & 0xFF) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The original name of the class with the line at the offset
+     */
+    String readClassName(int offset) {
+        return string(offset, indexOfArrow(offset, trimEnd(offset, lineEnd(offset))));
+    }
+
+    /**
+     * Reads the class with the line at the offset and its members.
+     * The obfuscated name of the class is stored under {@link #NAME}
+     */
+    Map<String, String> readClass(int offset) {
+        Map<String, String> members = new HashMap<>();
+        int end = lineEnd(offset);
+        readClassLine(offset, end, members);
+        int position = end + 1;
+        while (position < limit) {
+            end = lineEnd(position);
+            byte first = buffer.get(position);
+            if (first == ' ' || first == '\t') {
+                readMember(position, end, members);
+            } else if (isClassLine(position)) {
+                break;
+            }
+            position = end + 1;
+        }
+        return members;
+    }
+
+    private boolean isClassLine(int position) {
+        byte first = buffer.get(position);
+        return first != ' ' && first != '\t' && first != '#' && first != '\n' && first != '\r';
+    }
+
+    private int hash(int start, int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            result = 31 * result + (buffer.get(i) & 0xFF);
+        }
+        return result;
+    }
+
+    private void readClassLine(int start, int end, Map<String, String> members) {
+        end = trimEnd(start, end);
+        int arrow = indexOfArrow(start, end);
+        int obfuscatedEnd = end;
+        if (obfuscatedEnd > arrow + ARROW.length && buffer.get(obfuscatedEnd - 1) == ':') {
+            obfuscatedEnd--;
+        }
+        members.put(NAME, string(arrow + ARROW.length, obfuscatedEnd));
+    }
+
+    /**
+     * Parses a member line and stores it in members. Lines that are not valid members are ignored
+     */
+    private void readMember(int start, int end, Map<String, String> members) {
+        end = trimEnd(start, end);
+        int i = start;
+        while (i < end && isWhitespace(buffer.get(i))) {
+            i++;
+        }
+        // Line numbers of methods
+        i = skipLineNumbers(i, end);
+
+        int typeEnd = indexOf((byte) ' ', i, end);
+        if (typeEnd < 0) {
+            return;
+        }
+        int nameStart = typeEnd + 1;
+        int nameEnd = nameStart;
+        while (nameEnd < end && buffer.get(nameEnd) != ' ' && buffer.get(nameEnd) != '(') {
+            nameEnd++;
+        }
+        if (nameEnd == nameStart || nameEnd == end) {
+            return;
+        }
+
+        int length = 0;
+        int rest;
+        if (buffer.get(nameEnd) == '(') {
+            int parametersStart = nameEnd + 1;
+            int parametersEnd = indexOf((byte) ')', parametersStart, end);
+            if (parametersEnd < 0) {
+                return;
+            }
+            length = append(length, METHOD);
+            length = append(length, (byte) ' ');
+            length = append(length, nameStart, nameEnd);
+            if (parametersEnd > parametersStart) {
+                length = append(length, (byte) ' ');
+                length = append(length, parametersStart, parametersEnd);
+            }
+            // Lines of inlined methods have the original line numbers after the parameters. They are not
+            // methods of the class, so they are ignored like all lines that do not match the format
+            rest = parametersEnd + 1;
+        } else {
+            length = append(length, FIELD);
+            length = append(length, (byte) ' ');
+            length = append(length, nameStart, nameEnd);
+            rest = nameEnd;
+        }
+
+        if (!startsWithArrow(rest, end) || rest + ARROW.length >= end) {
+            return;
+        }
+        String key = new String(scratch, 0, length, StandardCharsets.ISO_8859_1);
+        members.put(key, string(rest + ARROW.length, end));
+    }
+
+    /**
+     * Skips "123:456:" if present
+     */
+    private int skipLineNumbers(int i, int end) {
+        int j = i;
+        for (int part = 0; part < 2; part++) {
+            int digits = j;
+            while (j < end && isDigit(buffer.get(j))) {
+                j++;
+            }
+            if (j == digits || j >= end || buffer.get(j) != ':') {
+                return i;
+            }
+            j++;
+        }
+        return j;
+    }
+
+    private int lineEnd(int position) {
+        int end = position;
+        while (end < limit && buffer.get(end) != '\n') {
+            end++;
+        }
+        return end;
+    }
+
+    private int trimEnd(int start, int end) {
+        while (end > start && isWhitespace(buffer.get(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private int indexOf(byte b, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOfArrow(int start, int end) {
+        for (int i = start; i + ARROW.length <= end; i++) {
+            if (startsWithArrow(i, end)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean startsWithArrow(int start, int end) {
+        if (start + ARROW.length > end) {
+            return false;
+        }
+        for (int i = 0; i < ARROW.length; i++) {
+            if (buffer.get(start + i) != ARROW[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int append(int length, byte b) {
+        ensureScratch(length + 1);
+        scratch[length] = b;
+        return length + 1;
+    }
+
+    private int append(int length, int start, int end) {
+        ensureScratch(length + end - start);
+        for (int i = start; i < end; i++) {
+            scratch[length++] = buffer.get(i);
+        }
+        return length;
+    }
+
+    private void ensureScratch(int length) {
+        if (length > scratch.length) {
+            byte[] bigger = new byte[Math.max(length, scratch.length * 2)];
+            System.arraycopy(scratch, 0, bigger, 0, scratch.length);
+            scratch = bigger;
+        }
+    }
+
+    private String string(int start, int end) {
+        int length = append(0, start, end);
+        return new String(scratch, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+import static org.iz.cs.chunker.io.ConsolePrinter.println;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the {@link GenerationMetrics} of a run, the heap usage and the server tick time at /metrics
+ * in the Prometheus text format, so they can be scraped like the metrics of any other service.
+ * The metrics are read when they are requested, nothing is added to the generation of a chunk.
+ */
+public final class MetricsEndpoint implements Closeable {
+
+    private static final String PATH = "/metrics";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final int SHORT_WINDOW_SECONDS = 10;
+    /**
+     * Upper bounds of the latency buckets, in seconds
+     */
+    private static final double[] LATENCY_BUCKETS = {
+            0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60 };
+
+    private final GenerationMetrics metrics;
+    private final GenerationBudget budget;
+    private final DoubleSupplier averageTickMillis;
+    private final HttpServer server;
+
+    /**
+     * @param host address to listen on, a loopback address unless the metrics are scraped from another machine
+     * @param averageTickMillis null if the tick time of the server is not known
+     */
+    public MetricsEndpoint(String host, int port, GenerationMetrics metrics, GenerationBudget budget,
+            DoubleSupplier averageTickMillis) throws IOException {
+        this.metrics = metrics;
+        this.budget = budget;
+        this.averageTickMillis = averageTickMillis;
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        if (address.isUnresolved()) {
+            throw new IOException("Unknown host " + host);
+        }
+        this.server = HttpServer.create(address, 0);
+        this.server.createContext(PATH, this::handle);
+    }
+
+    public void start() {
+        server.start();
+        InetSocketAddress address = server.getAddress();
+        if (address.getAddress().isAnyLocalAddress()) {
+            println("Serving metrics on all network interfaces at port " + address.getPort() + ", path " + PATH);
+            return;
+        }
+        String host = address.getAddress().getHostAddress();
+        if (address.getAddress() instanceof Inet6Address) {
+            host = "[" + host + "]";
+        }
+        println("Serving metrics at http://" + host + ":" + address.getPort() + PATH);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = write().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String write() {
+        StringBuilder sb = new StringBuilder(4096);
+
+        header(sb, "chunker_chunks_generated_total", "counter", "Chunks generated by this run");
+        for (Map.Entry<String, Long> entry : metrics.getGeneratedByDimension().entrySet()) {
+            sample(sb, "chunker_chunks_generated_total", "dimension", entry.getKey(), entry.getValue());
+        }
+        gauge(sb, "chunker_chunks_planned", "Chunks that will be generated by this run", metrics.getTotal());
+        gauge(sb, "chunker_chunks_in_flight", "Chunks requested from the server and not completed yet",
+                metrics.getInFlight());
+        gauge(sb, "chunker_chunks_per_second", "Chunks generated per second over the last 10 seconds",
+                metrics.getRate(SHORT_WINDOW_SECONDS));
+        double remaining = metrics.getEstimatedSecondsRemaining();
+        gauge(sb, "chunker_estimated_seconds_remaining",
+                "Seconds until all chunks are generated at the rate of the last minute, -1 if unknown",
+                remaining);
+        if (remaining >= 0) {
+            gauge(sb, "chunker_estimated_completion_timestamp_seconds",
+                    "Unix time at which all chunks are estimated to be generated",
+                    System.currentTimeMillis() / 1000d + remaining);
+        }
+        List<String> current = metrics.getCurrentDimensions();
+        header(sb, "chunker_dimension_generating", "gauge", "1 for the dimensions in which chunks are generated");
+        for (String dimension : current) {
+            sample(sb, "chunker_dimension_generating", "dimension", dimension, 1);
+        }
+
+        LatencyHistogram latency = metrics.getLatency();
+        header(sb, "chunker_chunk_latency_seconds", "histogram",
+                "Time from requesting a chunk from the server until it is generated");
+        for (double bucket : LATENCY_BUCKETS) {
+            sample(sb, "chunker_chunk_latency_seconds_bucket", "le", number(bucket),
+                    latency.getCountAtOrBelow(bucket * 1000));
+        }
+        long count = latency.getCount();
+        sample(sb, "chunker_chunk_latency_seconds_bucket", "le", "+Inf", count);
+        sample(sb, "chunker_chunk_latency_seconds_sum", null, null, latency.getTotalMillis() / 1000);
+        sample(sb, "chunker_chunk_latency_seconds_count", null, null, count);
+
+        counter(sb, "chunker_throttled_seconds_total", "Time spent waiting for max-generation-rate",
+                budget.getThrottledNanos() / 1e9);
+        counter(sb, "chunker_paused_seconds_total", "Time spent waiting while the generation was paused",
+                budget.getPausedNanos() / 1e9);
+        gauge(sb, "chunker_max_generation_rate", "Chunks per second allowed now, 0 for no limit",
+                budget.getMaxGenerationRate());
+        gauge(sb, "chunker_max_chunks_in_flight", "Chunks in flight allowed now", budget.getMaxChunksInFlight());
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        gauge(sb, "chunker_heap_used_bytes", "Used heap memory", heap.getUsed());
+        gauge(sb, "chunker_heap_max_bytes", "Maximum heap memory, -1 if not defined", heap.getMax());
+
+        if (averageTickMillis != null) {
+            gauge(sb, "chunker_server_tick_milliseconds", "Average duration of the recent server ticks",
+                    averageTickMillis.getAsDouble());
+        }
+        return sb.toString();
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help, double value) {
+        header(sb, name, "gauge", help);
+        sample(sb, name, null, null, value);
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, double value) {
+        header(sb, name, "counter", help);
+        sample(sb, name, null, null, value);
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * @param label null for a sample without labels
+     */
+    private static void sample(StringBuilder sb, String name, String label, String labelValue, double value) {
+        sb.append(name);
+        if (label != null) {
+            sb.append('{').append(label).append("=\"").append(labelValue).append("\"}");
+        }
+        sb.append(' ').append(number(value)).append('\n');
+    }
+
+    private static String number(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+}
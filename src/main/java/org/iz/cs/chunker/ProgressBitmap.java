@@ -0,0 +1,230 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Generation progress of one dimension, stored as one bit for each chunk of the area in a memory-mapped file.
+ * Chunks can be marked as done in any order and from any thread without locking. The bits are kept in memory and
+ * written to the file only by {@link #flush(long[])}, so that a chunk is recorded only once the server has saved it.
+ */
+public final class ProgressBitmap implements Closeable {
+
+    private static final int MAGIC = 0x43484B42;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final ByteBuffer data;
+    private final AtomicLongArray words;
+    private final int x1;
+    private final int x2;
+    private final int z1;
+    private final int z2;
+    private final int width;
+    private boolean closed = false;
+
+    private ProgressBitmap(Path path, FileChannel channel, MappedByteBuffer buffer, int x1, int x2, int z1, int z2) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.data = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.words = new AtomicLongArray((buffer.capacity() - HEADER_SIZE + 7) >>> 3);
+        for (int i = 0; i < words.length(); i++) {
+            words.set(i, readWord(i));
+        }
+        this.x1 = x1;
+        this.x2 = x2;
+        this.z1 = z1;
+        this.z2 = z2;
+        this.width = x2 - x1 + 1;
+    }
+
+    /**
+     * Opens the progress file for the area. If the file does not exist, was created for a different area
+     * or the generation is not resumed it is replaced with an empty one.
+     * @param resume whether to keep the chunks recorded in the file, only when there is saved progress.
+     * Otherwise the file can be left from an earlier run, as it cannot always be deleted while it is mapped
+     */
+    public static ProgressBitmap open(Path path, int x1, int x2, int z1, int z2, boolean resume) {
+        long bits = ((long) x2 - x1 + 1) * ((long) z2 - z1 + 1);
+        long size = HEADER_SIZE + ((bits + 7) >>> 3);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Area is too large to save progress");
+        }
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            try {
+                boolean matches = resume && channel.size() == size;
+                if (channel.size() > size) {
+                    channel.truncate(size);
+                }
+                MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, size);
+                if (matches) {
+                    matches = buffer.getInt(0) == MAGIC
+                            && buffer.getInt(4) == FORMAT_VERSION
+                            && buffer.getInt(8) == x1
+                            && buffer.getInt(12) == x2
+                            && buffer.getInt(16) == z1
+                            && buffer.getInt(20) == z2;
+                }
+                if (!matches) {
+                    for (int i = 0; i < size; i++) {
+                        buffer.put(i, (byte) 0);
+                    }
+                    buffer.putInt(0, MAGIC);
+                    buffer.putInt(4, FORMAT_VERSION);
+                    buffer.putInt(8, x1);
+                    buffer.putInt(12, x2);
+                    buffer.putInt(16, z1);
+                    buffer.putInt(20, z2);
+                    buffer.force();
+                }
+                return new ProgressBitmap(path, channel, buffer, x1, x2, z1, z2);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open progress file " + path, e);
+        }
+    }
+
+    public static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Still mapped on some platforms. It is cleared when the next run opens it without saved progress
+            Chunker.defaultErr.println("Could not delete progress file " + path);
+        }
+    }
+
+    public boolean get(int x, int z) {
+        if (x < x1 || x > x2 || z < z1 || z > z2) {
+            return false;
+        }
+        long index = index(x, z);
+        return (words.get((int) (index >>> 6)) & (1L << index)) != 0;
+    }
+
+    public void set(int x, int z) {
+        long index = index(x, z);
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long value;
+        do {
+            value = words.get(word);
+            if ((value & mask) != 0) {
+                return;
+            }
+        } while (!words.compareAndSet(word, value, value | mask));
+    }
+
+    public long cardinality() {
+        long result = 0;
+        for (int i = 0; i < words.length(); i++) {
+            result += Long.bitCount(words.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * The chunks marked as done so far, to be written with {@link #flush(long[])}
+     */
+    public long[] snapshot() {
+        long[] result = new long[words.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = words.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Writes the chunks of a snapshot to the disk. Chunks already in the file are kept, so an older snapshot can be
+     * written after a newer one. Only one thread writes at a time, marking chunks as done is not blocked.
+     * Does nothing once the file is closed
+     */
+    public synchronized void flush(long[] snapshot) {
+        if (closed) {
+            return;
+        }
+        for (int i = 0; i < snapshot.length; i++) {
+            long value = readWord(i);
+            if ((value | snapshot[i]) != value) {
+                writeWord(i, value | snapshot[i]);
+            }
+        }
+        buffer.force();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Closes the file. Chunks that were not written with {@link #flush(long[])} are not saved
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        channel.close();
+    }
+
+    private long index(int x, int z) {
+        return (long) (z - z1) * width + (x - x1);
+    }
+
+    private long readWord(int word) {
+        int position = HEADER_SIZE + (word << 3);
+        if (position + 8 <= data.capacity()) {
+            return data.getLong(position);
+        }
+        long value = 0;
+        for (int i = 0; position + i < data.capacity(); i++) {
+            value |= (data.get(position + i) & 0xFFL) << (i << 3);
+        }
+        return value;
+    }
+
+    private void writeWord(int word, long value) {
+        int position = HEADER_SIZE + (word << 3);
+        if (position + 8 <= data.capacity()) {
+            data.putLong(position, value);
+            return;
+        }
+        for (int i = 0; position + i < data.capacity(); i++) {
+            data.put(position + i, (byte) (value >>> (i << 3)));
+        }
+    }
+
+}
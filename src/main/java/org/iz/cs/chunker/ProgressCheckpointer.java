@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Saves the generation progress in the background while chunks are being generated, so that
+ * a run that is killed or crashes can be resumed from the last checkpoint.
+ * A checkpoint is made every configured number of seconds and/or every configured number of chunks.
+ */
+public final class ProgressCheckpointer implements Closeable {
+
+    private final Runnable checkpoint;
+    private final long intervalSeconds;
+    private final long chunksPerCheckpoint;
+
+    private final ScheduledExecutorService executor;
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicBoolean pending = new AtomicBoolean();
+
+    /**
+     * @param intervalSeconds seconds between checkpoints, 0 to not make checkpoints based on time
+     * @param chunksPerCheckpoint chunks generated between checkpoints, 0 to not make checkpoints based on chunks
+     */
+    public ProgressCheckpointer(Runnable checkpoint, long intervalSeconds, long chunksPerCheckpoint) {
+        this.checkpoint = checkpoint;
+        this.intervalSeconds = intervalSeconds;
+        this.chunksPerCheckpoint = chunksPerCheckpoint;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Chunker Checkpointer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static ProgressCheckpointer fromConfiguration(Runnable checkpoint) {
+        return new ProgressCheckpointer(checkpoint,
+                Configuration.checkpointInterval, Configuration.checkpointChunks);
+    }
+
+    public void start() {
+        if (intervalSeconds > 0) {
+            executor.scheduleWithFixedDelay(this::run, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Called after each generated chunk. Never blocks, the checkpoint is made on the checkpointer thread
+     */
+    public void chunkGenerated() {
+        if (chunksPerCheckpoint > 0
+                && chunks.incrementAndGet() % chunksPerCheckpoint == 0
+                && pending.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::run);
+            } catch (RejectedExecutionException e) {
+                // Closed
+            }
+        }
+    }
+
+    private void run() {
+        pending.set(false);
+        try {
+            checkpoint.run();
+        } catch (RuntimeException e) {
+            Chunker.defaultErr.println("Could not save a progress checkpoint");
+            e.printStackTrace(Chunker.defaultErr);
+        }
+    }
+
+    /**
+     * Stops making checkpoints. Waits for a checkpoint that is being made to complete
+     */
+    @Override
+    public void close() {
+        // Periodic checkpoints are cancelled, one already started is not interrupted
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+import static org.iz.cs.chunker.io.ConsolePrinter.println;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the startup tasks on background threads, as soon as the tasks they depend on are done,
+ * and records when each task started and ended, so the timeline can be printed.
+ */
+public final class StartupTimeline {
+
+    private final long start = System.nanoTime();
+    private final List<Entry> entries = new ArrayList<>();
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "Chunker Startup " + threadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Starts a task that depends on nothing
+     */
+    public <T> CompletableFuture<T> run(String name, Callable<T> task) {
+        return CompletableFuture.supplyAsync(() -> call(name, task), executor);
+    }
+
+    /**
+     * Starts a task once another task is done
+     */
+    public <A, T> CompletableFuture<T> then(String name, CompletableFuture<A> dependency, Task<A, T> task) {
+        return dependency.thenApplyAsync(a -> call(name, () -> task.apply(a)), executor);
+    }
+
+    /**
+     * Starts a task once two other tasks are done
+     */
+    public <A, B, T> CompletableFuture<T> then(String name,
+            CompletableFuture<A> first, CompletableFuture<B> second, BiTask<A, B, T> task) {
+        return first.thenCombineAsync(second, (a, b) -> call(name, () -> task.apply(a, b)), executor);
+    }
+
+    /**
+     * Records something that happened at this moment
+     */
+    public void mark(String name) {
+        Entry entry = new Entry(name, System.nanoTime());
+        entry.end = entry.start;
+        entry.done = true;
+        entry.instant = true;
+        synchronized (entries) {
+            entries.add(entry);
+        }
+    }
+
+    /**
+     * Waits for the task and throws the exception it failed with, if any
+     */
+    public static <T> T join(CompletableFuture<T> task) throws Exception {
+        try {
+            return task.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Tasks that are not done yet keep running
+     */
+    public void close() {
+        executor.shutdown();
+    }
+
+    public void print() {
+        println("Startup timeline:");
+        synchronized (entries) {
+            for (Entry entry : entries) {
+                long from = TimeUnit.NANOSECONDS.toMillis(entry.start - start);
+                if (entry.instant) {
+                    println(String.format("  %-24s %6d ms", entry.name, from));
+                } else if (!entry.done) {
+                    println(String.format("  %-24s %6d ms - still running", entry.name, from));
+                } else {
+                    long to = TimeUnit.NANOSECONDS.toMillis(entry.end - start);
+                    println(String.format("  %-24s %6d ms - %6d ms (%d ms)", entry.name, from, to, to - from));
+                }
+            }
+        }
+    }
+
+    private <T> T call(String name, Callable<T> task) {
+        Entry entry = new Entry(name, System.nanoTime());
+        synchronized (entries) {
+            entries.add(entry);
+        }
+        try {
+            return task.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        } finally {
+            long end = System.nanoTime();
+            synchronized (entries) {
+                entry.end = end;
+                entry.done = true;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Task<A, T> {
+        T apply(A a) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface BiTask<A, B, T> {
+        T apply(A a, B b) throws Exception;
+    }
+
+    private static final class Entry {
+        private final String name;
+        private final long start;
+        private long end;
+        private boolean done = false;
+        private boolean instant = false;
+
+        private Entry(String name, long start) {
+            this.name = name;
+            this.start = start;
+        }
+    }
+
+}
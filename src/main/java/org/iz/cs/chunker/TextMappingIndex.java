@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Finds classes in a mapping file by the offsets of their lines. Only the offsets are kept for all
+ * classes, in a hash table keyed by the hash code of the original name. The members of a class are
+ * read the first time it is requested.
+ */
+final class TextMappingIndex implements MappingIndex {
+
+    private final MappingParser parser;
+    private final int[] offsets;
+    private final int[] hashes;
+    private final int mask;
+    private final Map<String, Map<String, String>> classes = new ConcurrentHashMap<>();
+
+    private TextMappingIndex(MappingParser parser, int[] offsets, int[] hashes) {
+        this.parser = parser;
+        this.offsets = offsets;
+        this.hashes = hashes;
+        this.mask = offsets.length - 1;
+    }
+
+    static TextMappingIndex build(ByteBuffer buffer) {
+        MappingParser parser = new MappingParser(buffer);
+        ClassOffsets found = new ClassOffsets();
+        parser.scanClasses(found);
+
+        int capacity = Integer.highestOneBit(Math.max(16, found.size * 2 - 1)) << 1;
+        int[] offsets = new int[capacity];
+        int[] hashes = new int[capacity];
+        Arrays.fill(offsets, -1);
+        TextMappingIndex result = new TextMappingIndex(parser, offsets, hashes);
+        for (int i = 0; i < found.size; i++) {
+            result.put(found.offsets[i], found.hashes[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, String> getClass(String originalClass) {
+        Map<String, String> result = classes.get(originalClass);
+        if (result == null) {
+            int offset = find(originalClass);
+            if (offset < 0) {
+                return null;
+            }
+            synchronized (parser) {
+                result = parser.readClass(offset);
+            }
+            classes.put(originalClass, result);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean contains(String originalClass) {
+        return classes.containsKey(originalClass) || find(originalClass) >= 0;
+    }
+
+    /**
+     * Reads all classes with their members, without keeping them
+     */
+    void forEachClass(BiConsumer<String, Map<String, String>> action) {
+        for (int offset : offsets) {
+            if (offset < 0) {
+                continue;
+            }
+            String name;
+            Map<String, String> members;
+            synchronized (parser) {
+                name = parser.readClassName(offset);
+                members = parser.readClass(offset);
+            }
+            action.accept(name, members);
+        }
+    }
+
+    private int find(String originalClass) {
+        int hash = originalClass.hashCode();
+        for (int slot = mix(hash) & mask; offsets[slot] >= 0; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && parser.hasName(offsets[slot], originalClass)) {
+                return offsets[slot];
+            }
+        }
+        return -1;
+    }
+
+    private void put(int offset, int hash) {
+        int slot = mix(hash) & mask;
+        while (offsets[slot] >= 0) {
+            if (hashes[slot] == hash && sameName(offsets[slot], offset)) {
+                // A class that is mapped twice, the last one is used
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        offsets[slot] = offset;
+        hashes[slot] = hash;
+    }
+
+    private boolean sameName(int offset, int otherOffset) {
+        String name;
+        synchronized (parser) {
+            name = parser.readClassName(otherOffset);
+        }
+        return parser.hasName(offset, name);
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class ClassOffsets implements MappingParser.ClassVisitor {
+        private int[] offsets = new int[4096];
+        private int[] hashes = new int[4096];
+        private int size = 0;
+
+        @Override
+        public void visit(int offset, int hash) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                hashes = Arrays.copyOf(hashes, size * 2);
+            }
+            offsets[size] = offset;
+            hashes[size] = hash;
+            size++;
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Adjusts the limits of a {@link GenerationBudget} to keep the average server tick time
+ * under a target, so chunk generation only uses the time the server does not need for ticking.
+ * <p>
+ * When ticks are too slow the number of chunks in flight is halved, and once it is down to one
+ * the generation rate is lowered. When there is time to spare the rate is raised first and then
+ * the number of chunks in flight, up to the configured limits.
+ */
+public final class TickTimeThrottle implements Closeable {
+
+    private static final long PERIOD_MILLIS = 1000L;
+    /**
+     * The server averages the last 100 ticks, so a change shows fully only after about 5 seconds
+     */
+    private static final long SETTLE_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final double HEADROOM = 0.8;
+    private static final double MIN_RATE = 1;
+
+    private final GenerationBudget budget;
+    private final DoubleSupplier averageTickMillis;
+    private final double targetMillis;
+    private volatile int maxChunksInFlight;
+    private volatile double maxRate;
+
+    private final ScheduledExecutorService executor;
+
+    private long lastSample;
+    private long lastCompleted;
+    private long settledAt;
+
+    /**
+     * The current limits of the budget are the upper limits of the throttle
+     */
+    public TickTimeThrottle(GenerationBudget budget, DoubleSupplier averageTickMillis, double targetMillis) {
+        this.budget = budget;
+        this.averageTickMillis = averageTickMillis;
+        this.targetMillis = targetMillis;
+        this.maxChunksInFlight = budget.getMaxChunksInFlight();
+        this.maxRate = budget.getMaxGenerationRate();
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Chunker Throttle");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void start() {
+        lastSample = System.nanoTime();
+        lastCompleted = budget.getCompleted();
+        settledAt = lastSample;
+        executor.scheduleAtFixedRate(this::run, PERIOD_MILLIS, PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void run() {
+        try {
+            adjust();
+        } catch (RuntimeException e) {
+            Chunker.defaultErr.println("Could not adjust the generation speed");
+            e.printStackTrace(Chunker.defaultErr);
+        }
+    }
+
+    private void adjust() {
+        double tickMillis = averageTickMillis.getAsDouble();
+        long now = System.nanoTime();
+        long completed = budget.getCompleted();
+        double throughput = (completed - lastCompleted) * (double) TimeUnit.SECONDS.toNanos(1) / (now - lastSample);
+        lastSample = now;
+        lastCompleted = completed;
+
+        if (now - settledAt < 0) {
+            return;
+        }
+
+        int inFlight = budget.getMaxChunksInFlight();
+        double rate = budget.getMaxGenerationRate();
+        if (tickMillis > targetMillis) {
+            if (inFlight > 1) {
+                budget.setMaxChunksInFlight(inFlight / 2);
+            } else {
+                if (rate == 0) {
+                    rate = throughput;
+                }
+                budget.setMaxGenerationRate(Math.max(MIN_RATE, rate * 0.7));
+            }
+            settledAt = now + SETTLE_NANOS;
+        } else if (tickMillis < targetMillis * HEADROOM) {
+            if (rate > 0 && (maxRate == 0 || rate < maxRate)) {
+                double next = rate * 1.1 + 1;
+                if (maxRate > 0) {
+                    next = Math.min(next, maxRate);
+                } else if (throughput < rate / 2) {
+                    // The rate is not what limits the generation any more
+                    next = 0;
+                }
+                budget.setMaxGenerationRate(next);
+            } else if (inFlight < maxChunksInFlight) {
+                budget.setMaxChunksInFlight(Math.min(maxChunksInFlight, inFlight + Math.max(1, inFlight / 4)));
+            }
+        }
+    }
+
+    /**
+     * Changes the upper limit of the chunks in flight. The budget is lowered at once if it is over
+     * the new limit and raised gradually, like when the server has time to spare
+     */
+    public void setMaxChunksInFlight(int maxChunksInFlight) {
+        this.maxChunksInFlight = maxChunksInFlight;
+        if (budget.getMaxChunksInFlight() > maxChunksInFlight) {
+            budget.setMaxChunksInFlight(maxChunksInFlight);
+        }
+    }
+
+    /**
+     * Changes the upper limit of the generation rate, 0 for no limit. The budget is lowered at once
+     * if it is over the new limit and raised gradually
+     */
+    public void setMaxGenerationRate(double maxRate) {
+        this.maxRate = maxRate;
+        double rate = budget.getMaxGenerationRate();
+        if (maxRate > 0 && (rate == 0 || rate > maxRate)) {
+            budget.setMaxGenerationRate(maxRate);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * The id and the URL of the client.json of each version in the launcher manifest, saved in a
+ * compact binary file and read through a memory-mapped buffer.
+ * <p>
+ * The file has a header, a hash table of the versions by id, the versions sorted by id and a pool
+ * of strings. Each version also has its position in the manifest, which lists the newest version first.
+ * The header has the size and the modification time of the manifest the file was made from, so
+ * the file is made again when the manifest is downloaded again.
+ */
+public final class VersionIndex {
+
+    private static final int MAGIC = 0x43484B56;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+    private static final int SLOT_SIZE = 8;
+    private static final int VERSION_SIZE = 12;
+    private static final int EMPTY = -1;
+
+    private final ByteBuffer buffer;
+    private final int slotMask;
+    private final int versionTable;
+    private final int stringPool;
+
+    private VersionIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.slotMask = buffer.getInt(28) - 1;
+        this.versionTable = HEADER_SIZE + buffer.getInt(28) * SLOT_SIZE;
+        this.stringPool = buffer.getInt(32);
+    }
+
+    /**
+     * Opens the index of the manifest, making it first if there is none or it is from another manifest.
+     * If the index cannot be saved, the one that was made is used from memory
+     */
+    static VersionIndex forManifest(Path indexPath, Path manifestPath) throws IOException {
+        long size = Files.size(manifestPath);
+        long modified = Files.getLastModifiedTime(manifestPath).toMillis();
+        VersionIndex result = open(indexPath, size, modified);
+        if (result == null) {
+            List<String[]> versions;
+            try (Reader reader = Files.newBufferedReader(manifestPath)) {
+                versions = readManifest(reader);
+            }
+            byte[] index = build(size, modified, versions);
+            try {
+                write(indexPath, index);
+            } catch (IOException e) {
+                // The manifest is read again next time
+            }
+            result = new VersionIndex(ByteBuffer.wrap(index));
+        }
+        return result;
+    }
+
+    /**
+     * @return position of the version in the manifest, where 0 is the newest version,
+     * or -1 if the version is not in the manifest
+     */
+    public int getOrder(String id) {
+        int version = find(id);
+        return version < 0 ? -1 : buffer.getInt(version + 8);
+    }
+
+    /**
+     * @return URL of the client.json of the version, null if the version is not in the manifest
+     */
+    public String getUrl(String id) {
+        int version = find(id);
+        return version < 0 ? null : string(buffer.getInt(version + 4));
+    }
+
+    public boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    private int find(String id) {
+        int hash = id.hashCode();
+        for (int slot = mix(hash) & slotMask; ; slot = (slot + 1) & slotMask) {
+            int position = HEADER_SIZE + slot * SLOT_SIZE;
+            int version = buffer.getInt(position + 4);
+            if (version == EMPTY) {
+                return -1;
+            }
+            int entry = versionTable + version * VERSION_SIZE;
+            if (buffer.getInt(position) == hash && stringEquals(buffer.getInt(entry), id)) {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * Reads only the id and the url of the versions, without keeping the rest of the manifest
+     *
+     * @return id and url of each version, in the order of the manifest
+     */
+    static List<String[]> readManifest(Reader reader) throws IOException {
+        List<String[]> result = new ArrayList<>();
+        JsonReader json = new JsonReader(reader);
+        json.beginObject();
+        while (json.hasNext()) {
+            if (!"versions".equals(json.nextName())) {
+                json.skipValue();
+                continue;
+            }
+            json.beginArray();
+            while (json.hasNext()) {
+                String id = null;
+                String url = null;
+                json.beginObject();
+                while (json.hasNext()) {
+                    String name = json.nextName();
+                    if ("id".equals(name) && json.peek() == JsonToken.STRING) {
+                        id = json.nextString();
+                    } else if ("url".equals(name) && json.peek() == JsonToken.STRING) {
+                        url = json.nextString();
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                json.endObject();
+                if (id != null && url != null) {
+                    result.add(new String[] { id, url });
+                }
+            }
+            json.endArray();
+        }
+        json.endObject();
+        return result;
+    }
+
+    private static VersionIndex open(Path path, long manifestSize, long manifestModified) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC
+                    || buffer.getInt(4) != FORMAT_VERSION
+                    || buffer.getLong(8) != manifestSize
+                    || buffer.getLong(16) != manifestModified
+                    || buffer.getInt(36) != channel.size()) {
+                return null;
+            }
+            return new VersionIndex(buffer);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static byte[] build(long manifestSize, long manifestModified, List<String[]> versions)
+            throws IOException {
+        // Sorted by id. The position in the manifest is kept as the order
+        Integer[] sorted = new Integer[versions.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, (a, b) -> versions.get(a)[0].compareTo(versions.get(b)[0]));
+
+        int capacity = Integer.highestOneBit(Math.max(16, versions.size() * 2 - 1)) << 1;
+        int[] slots = new int[capacity * 2];
+        for (int slot = 0; slot < capacity; slot++) {
+            slots[slot * 2 + 1] = EMPTY;
+        }
+
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        DataOutputStream stringsOut = new DataOutputStream(strings);
+        int[] table = new int[versions.size() * 3];
+        for (int i = 0; i < sorted.length; i++) {
+            String[] version = versions.get(sorted[i]);
+            int hash = version[0].hashCode();
+            int slot = mix(hash) & (capacity - 1);
+            while (slots[slot * 2 + 1] != EMPTY) {
+                if (version[0].equals(versions.get(sorted[slots[slot * 2 + 1]])[0])) {
+                    break;
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+            if (slots[slot * 2 + 1] != EMPTY) {
+                // The same id twice. The first one in the manifest is kept
+                continue;
+            }
+            slots[slot * 2] = hash;
+            slots[slot * 2 + 1] = i;
+            table[i * 3] = writeString(stringsOut, strings, version[0]);
+            table[i * 3 + 1] = writeString(stringsOut, strings, version[1]);
+            table[i * 3 + 2] = sorted[i];
+        }
+
+        int stringPool = HEADER_SIZE + capacity * SLOT_SIZE + versions.size() * VERSION_SIZE;
+        int fileSize = stringPool + strings.size();
+
+        ByteArrayOutputStream index = new ByteArrayOutputStream(fileSize);
+        try (DataOutputStream out = new DataOutputStream(index)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(manifestSize);
+            out.writeLong(manifestModified);
+            out.writeInt(versions.size());
+            out.writeInt(capacity);
+            out.writeInt(stringPool);
+            out.writeInt(fileSize);
+            for (int value : slots) {
+                out.writeInt(value);
+            }
+            for (int value : table) {
+                out.writeInt(value);
+            }
+            strings.writeTo(out);
+        }
+        return index.toByteArray();
+    }
+
+    /**
+     * The file is replaced only once it is completely written
+     */
+    private static void write(Path path, byte[] index) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(temporaryPath, index);
+        try {
+            Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static int writeString(DataOutputStream out, ByteArrayOutputStream strings, String value)
+            throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Value is too long: " + value);
+        }
+        int ref = strings.size();
+        out.writeShort(bytes.length);
+        out.write(bytes);
+        return ref;
+    }
+
+    private String string(int ref) {
+        int position = stringPool + ref;
+        byte[] bytes = new byte[buffer.getShort(position) & 0xFFFF];
+        ByteBuffer source = buffer.duplicate();
+        source.position(position + 2);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean stringEquals(int ref, String value) {
+        int position = stringPool + ref;
+        int length = buffer.getShort(position) & 0xFFFF;
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (length != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(position + 2 + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.iz.cs.chunker.ChunkBitmap;
+
+/**
+ * Finds which chunks are already saved by reading only the headers of the region (.mca) files.
+ * A region file starts with a table of 1024 locations (one per chunk, 0 if the chunk is not saved)
+ * followed by a table of 1024 timestamps.
+ */
+public class RegionFileScanner {
+
+    private static final int REGION_SHIFT = 5;
+    private static final int REGION_MASK = (1 << REGION_SHIFT) - 1;
+    private static final int CHUNKS_PER_REGION = 1 << (2 * REGION_SHIFT);
+    private static final int HEADER_SIZE = CHUNKS_PER_REGION * 4 * 2;
+
+    private RegionFileScanner() {
+        // No instances
+    }
+
+    /**
+     * Chunks at the border of an already generated area are often saved before they are fully generated.
+     * The header does not tell how far a chunk is generated, so a chunk is only considered done if all
+     * chunks up to margin chunks away from it are saved as well.
+     * @return the chunks of the area that are considered done
+     */
+    public static ChunkBitmap scan(Path regionFolder, int x1, int x2, int z1, int z2, int margin) {
+        ChunkBitmap saved = readHeaders(regionFolder, x1 - margin, x2 + margin, z1 - margin, z2 + margin);
+        if (margin == 0) {
+            return saved;
+        }
+        return erode(saved, margin);
+    }
+
+    private static ChunkBitmap readHeaders(Path regionFolder, int x1, int x2, int z1, int z2) {
+        ChunkBitmap result = new ChunkBitmap(x1, x2, z1, z2);
+        if (!Files.isDirectory(regionFolder)) {
+            return result;
+        }
+        ByteBuffer header = ByteBuffer.allocateDirect(HEADER_SIZE);
+        for (int rx = x1 >> REGION_SHIFT; rx <= x2 >> REGION_SHIFT; rx++) {
+            for (int rz = z1 >> REGION_SHIFT; rz <= z2 >> REGION_SHIFT; rz++) {
+                Path regionFile = regionFolder.resolve("r." + rx + "." + rz + ".mca");
+                if (!Files.exists(regionFile)) {
+                    continue;
+                }
+                header.clear();
+                try (FileChannel channel = FileChannel.open(regionFile, StandardOpenOption.READ)) {
+                    while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                        // read the whole header
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not read region file " + regionFile, e);
+                }
+                if (header.hasRemaining()) {
+                    // Empty or damaged file. The server will deal with it
+                    continue;
+                }
+                for (int i = 0; i < CHUNKS_PER_REGION; i++) {
+                    int location = header.getInt(i * 4);
+                    int timestamp = header.getInt(CHUNKS_PER_REGION * 4 + i * 4);
+                    if (location == 0 || timestamp == 0) {
+                        continue;
+                    }
+                    int x = (rx << REGION_SHIFT) | (i & REGION_MASK);
+                    int z = (rz << REGION_SHIFT) | (i >> REGION_SHIFT);
+                    if (result.contains(x, z)) {
+                        result.set(x, z);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Keeps only the chunks that have no missing chunk closer than margin along x and z
+     */
+    private static ChunkBitmap erode(ChunkBitmap saved, int margin) {
+        int x1 = saved.getX1() + margin;
+        int x2 = saved.getX2() - margin;
+        int z1 = saved.getZ1() + margin;
+        int z2 = saved.getZ2() - margin;
+
+        ChunkBitmap rows = new ChunkBitmap(x1, x2, saved.getZ1(), saved.getZ2());
+        for (int z = saved.getZ1(); z <= saved.getZ2(); z++) {
+            int present = 0;
+            for (int x = saved.getX1(); x <= saved.getX2(); x++) {
+                present = saved.get(x, z) ? present + 1 : 0;
+                // present is the number of saved chunks in a row ending at x
+                if (present > 2 * margin) {
+                    rows.set(x - margin, z);
+                }
+            }
+        }
+
+        ChunkBitmap result = new ChunkBitmap(x1, x2, z1, z2);
+        for (int x = x1; x <= x2; x++) {
+            int present = 0;
+            for (int z = saved.getZ1(); z <= saved.getZ2(); z++) {
+                present = rows.get(x, z) ? present + 1 : 0;
+                if (present > 2 * margin) {
+                    result.set(x, z - margin);
+                }
+            }
+        }
+        return result;
+    }
+
+}
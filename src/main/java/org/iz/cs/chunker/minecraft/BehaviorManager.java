@@ -21,6 +21,7 @@ import java.util.EnumMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.iz.cs.chunker.Configuration;
 import org.iz.cs.chunker.Mapping;
@@ -33,23 +34,40 @@ public class BehaviorManager {
     public static enum BehaviorName {
         IS_SERVER_READY(new IsServerReady()),
         GET_DEDICATED_SERVER_CLASS_NAME(new GetDedicatedServerClassName()),
+        GET_READY_FIELD(new GetReadyField()),
         GET_DEDICATED_SERVER_INSTANCE(new GetDedicatedServerInstance()),
         GENERATE_CHUNK(new GenerateChunk()),
         GET_LEVEL(new GetLevel()),
         GET_LEVEL_KEY(new GetLevelKey()),
         MAP_DIMENSION(new MapDimension()),
+        GENERATE_CHUNK_ASYNC(new GenerateChunkAsync(), true),
+        GET_TICK_TIMES(new GetTickTimes(), true),
+        SAVE_ALL_CHUNKS(new SaveAllChunks(), true),
         ;
 
         private BehaviorContainer behaviorContainer;
+        private boolean optional;
 
         private BehaviorName(BehaviorContainer behaviorContainer) {
+            this(behaviorContainer, false);
+        }
+
+        /**
+         * Optional behaviors are only validated when a feature that uses them is enabled
+         */
+        private BehaviorName(BehaviorContainer behaviorContainer, boolean optional) {
             this.behaviorContainer = behaviorContainer;
+            this.optional = optional;
         }
 
         public BehaviorContainer getBehaviorContainer() {
             return behaviorContainer;
         }
 
+        public boolean isOptional() {
+            return optional;
+        }
+
         public Object apply(Object arg, BehaviorManager bm) {
             return bm.get(this).apply(arg);
         }
@@ -73,56 +91,77 @@ public class BehaviorManager {
         this.behaviorCache = new EnumMap<>(BehaviorName.class);
     }
 
-    private Behavior get(BehaviorName behaviorName) {
+    /**
+     * The behavior selected for the version
+     */
+    Behavior get(BehaviorName behaviorName) {
         Behavior result = this.behaviorCache.get(behaviorName);
         if (result == null) {
-            Class<? extends Behavior> last = null;
-            String lastVersion = null;
-
-            String minVersion = null;
-            Class<? extends Behavior> min = null;
+            throw new IllegalStateException(behaviorName.name() + " was not resolved");
+        }
+        return result;
+    }
 
-            for (Entry<String, Map<BehaviorName, Class<? extends Behavior>>> entry : LazyLoader.versionMap.entrySet()) {
-                Class<? extends Behavior> next = entry.getValue().get(behaviorName);
-                if (next == null) {
-                    continue;
-                }
+    /**
+     * @return null if the behavior is optional and was not resolved
+     */
+    Behavior find(BehaviorName behaviorName) {
+        return this.behaviorCache.get(behaviorName);
+    }
 
-                if (min == null || VersionUtils.compare(minVersion, entry.getKey()) > 0) {
-                    min = next;
-                    minVersion = entry.getKey();
+    /**
+     * Selects the behaviors for the version, going through the versions once for all behaviors.
+     * Optional behaviors are selected only if they are in optionalNames. The behaviors are
+     * created but not validated
+     */
+    public void resolve(Set<BehaviorName> optionalNames) {
+        Map<BehaviorName, Class<? extends Behavior>> last = new EnumMap<>(BehaviorName.class);
+        Map<BehaviorName, String> lastVersion = new EnumMap<>(BehaviorName.class);
+        Map<BehaviorName, Class<? extends Behavior>> min = new EnumMap<>(BehaviorName.class);
+        Map<BehaviorName, String> minVersion = new EnumMap<>(BehaviorName.class);
+
+        for (Entry<String, Map<BehaviorName, Class<? extends Behavior>>> entry : LazyLoader.versionMap.entrySet()) {
+            String entryVersion = entry.getKey();
+            boolean applies = VersionUtils.compare(entryVersion, this.version) <= 0;
+            for (Entry<BehaviorName, Class<? extends Behavior>> behavior : entry.getValue().entrySet()) {
+                BehaviorName behaviorName = behavior.getKey();
+                if (!min.containsKey(behaviorName)
+                        || VersionUtils.compare(minVersion.get(behaviorName), entryVersion) > 0) {
+                    min.put(behaviorName, behavior.getValue());
+                    minVersion.put(behaviorName, entryVersion);
                 }
-
-                if (VersionUtils.compare(entry.getKey(), this.version) > 0) {
+                if (!applies) {
                     continue;
                 }
-                if (last != null && VersionUtils.compare(entry.getKey(), lastVersion) < 0) {
+                if (last.containsKey(behaviorName)
+                        && VersionUtils.compare(entryVersion, lastVersion.get(behaviorName)) < 0) {
                     continue;
                 }
-                last = next;
-                lastVersion = entry.getKey();
-            }
-            if (last == null && Configuration.defaultBehaviors && min != null) {
-                last = min;
+                last.put(behaviorName, behavior.getValue());
+                lastVersion.put(behaviorName, entryVersion);
             }
+        }
 
-            if (last == null) {
+        for (BehaviorName behaviorName : BEHAVIOR_NAMES) {
+            if (behaviorName.isOptional() && !optionalNames.contains(behaviorName)) {
+                continue;
+            }
+            Class<? extends Behavior> selected = last.get(behaviorName);
+            if (selected == null && Configuration.defaultBehaviors) {
+                selected = min.get(behaviorName);
+            }
+            if (selected == null) {
                 throw new IllegalStateException(behaviorName.name() + " " + this.version);
             }
-            result = newInstance(last);
-            this.behaviorCache.put(behaviorName, result);
+            this.behaviorCache.put(behaviorName, newInstance(selected));
         }
-        return result;
     }
 
-    public <A extends Behavior> A newInstance(Class<A> cl) {
+    private <A extends Behavior> A newInstance(Class<A> cl) {
         try {
             Constructor constructor = cl.getDeclaredConstructor();
             A result = (A) constructor.newInstance();
             result.init(this, classCache, mapping, serverInterface);
-            result.checkMappings();
-            result.checkClasses();
-            result.bootstrap();
             return result;
         } catch (NoSuchMethodException
                 | SecurityException
@@ -134,20 +173,30 @@ public class BehaviorManager {
         }
     }
 
+    /**
+     * Checks the mappings of all resolved behaviors in parallel
+     */
     public boolean checkMappings() {
-        boolean result = true;
-        for (BehaviorName behaviorName : BEHAVIOR_NAMES) {
-            result = result & get(behaviorName).checkMappings();
-        }
-        return result;
+        return this.behaviorCache.values().parallelStream()
+                .map(Behavior::checkMappings)
+                .reduce(true, Boolean::logicalAnd);
     }
 
+    /**
+     * Checks the classes of all resolved behaviors in parallel. Loads the classes, so the classes
+     * to decorate must be set before
+     */
     public boolean checkClasses() {
-        boolean result = true;
-        for (BehaviorName behaviorName : BEHAVIOR_NAMES) {
-            result = result & get(behaviorName).checkClasses();
-        }
-        return result;
+        return this.behaviorCache.values().parallelStream()
+                .map(Behavior::checkClasses)
+                .reduce(true, Boolean::logicalAnd);
+    }
+
+    /**
+     * Bootstraps all resolved behaviors in parallel. Must be called after they are checked
+     */
+    public void bootstrap() {
+        this.behaviorCache.values().parallelStream().forEach(Behavior::bootstrap);
     }
 
     public String getVersion() {
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.minecraft;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A bounded window of chunk requests that are being generated by the server.
+ * Requests are retired in the order they were submitted, so the last retired
+ * chunk can be used as the point to resume from. The bound can be changed between requests.
+ */
+final class ChunkRequestWindow {
+
+    private static final long POLL_MILLIS = 100L;
+
+    private CompletableFuture<?>[] futures;
+    private int[] xs;
+    private int[] zs;
+    private int capacity;
+    private int head = 0;
+    private int size = 0;
+
+    private boolean hasRetired = false;
+    private int lastX;
+    private int lastZ;
+
+    ChunkRequestWindow(int capacity) {
+        this.futures = new CompletableFuture<?>[capacity];
+        this.xs = new int[capacity];
+        this.zs = new int[capacity];
+        this.capacity = capacity;
+    }
+
+    /**
+     * Requests already submitted are kept if the capacity is lowered, the next submit waits for them instead
+     */
+    void setCapacity(int capacity) {
+        if (capacity > futures.length) {
+            CompletableFuture<?>[] newFutures = new CompletableFuture<?>[capacity];
+            int[] newXs = new int[capacity];
+            int[] newZs = new int[capacity];
+            for (int k = 0; k < size; k++) {
+                int index = (head + k) % futures.length;
+                newFutures[k] = futures[index];
+                newXs[k] = xs[index];
+                newZs[k] = zs[index];
+            }
+            futures = newFutures;
+            xs = newXs;
+            zs = newZs;
+            head = 0;
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds a request, waiting for the oldest ones to complete if the window is full
+     */
+    void submit(int x, int z, CompletableFuture<?> future, Thread serverThread) {
+        while (size >= capacity) {
+            if (!retireOldest(serverThread)) {
+                return;
+            }
+        }
+        int tail = (head + size) % futures.length;
+        futures[tail] = future;
+        xs[tail] = x;
+        zs[tail] = z;
+        size++;
+        retireCompleted();
+    }
+
+    /**
+     * Waits for all submitted requests to complete
+     */
+    void drain(Thread serverThread) {
+        while (size > 0) {
+            if (!retireOldest(serverThread)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits for the submitted requests to complete without checking their results, after the generation
+     * was stopped by a failed request. The last retired chunk is not changed, as the requests after a failed
+     * one do not continue the order
+     */
+    void abandon(Thread serverThread) {
+        while (size > 0) {
+            CompletableFuture<?> future = futures[head];
+            while (!future.isDone()) {
+                if (!serverThread.isAlive()) {
+                    return;
+                }
+                try {
+                    future.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException | ExecutionException e) {
+                    // Checked again by isDone
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            futures[head] = null;
+            head = (head + 1) % futures.length;
+            size--;
+        }
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return true if a request was retired since the last call, the last retired chunk is then
+     * at {@link #getLastX} and {@link #getLastZ}
+     */
+    boolean pollRetired() {
+        boolean result = hasRetired;
+        hasRetired = false;
+        return result;
+    }
+
+    int getLastX() {
+        return lastX;
+    }
+
+    int getLastZ() {
+        return lastZ;
+    }
+
+    private void retireCompleted() {
+        while (size > 0 && futures[head].isDone()) {
+            retire();
+        }
+    }
+
+    private boolean retireOldest(Thread serverThread) {
+        CompletableFuture<?> future = futures[head];
+        while (true) {
+            try {
+                future.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                break;
+            } catch (TimeoutException e) {
+                if (!serverThread.isAlive()) {
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Error generating chunk (" + xs[head] + ", " + zs[head] + ")",
+                        e.getCause());
+            }
+        }
+        retire();
+        retireCompleted();
+        return true;
+    }
+
+    private void retire() {
+        try {
+            futures[head].join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Error generating chunk (" + xs[head] + ", " + zs[head] + ")",
+                    e.getCause());
+        }
+        lastX = xs[head];
+        lastZ = zs[head];
+        hasRetired = true;
+        futures[head] = null;
+        head = (head + 1) % futures.length;
+        size--;
+    }
+
+}
@@ -15,8 +15,9 @@
  */
 package org.iz.cs.chunker.minecraft;
 
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.iz.cs.chunker.JarClassLoader;
 import org.iz.cs.chunker.Mapping;
@@ -30,8 +31,12 @@ public class ClassCache {
     public ClassCache(Mapping mapping, JarClassLoader loader) {
         this.mapping = mapping;
         this.loader = loader;
-        this.cache = new HashMap<>();
+        this.cache = new ConcurrentHashMap<>();
         this.cache.put("int", int.class);
+        this.cache.put("boolean", boolean.class);
+        this.cache.put("java.lang.Object", Object.class);
+        this.cache.put("java.lang.String", String.class);
+        this.cache.put("java.util.Comparator", Comparator.class);
     }
 
     public Class<?> get(String className) {
@@ -25,6 +25,19 @@ public interface Constants {
     String LEVEL_KEYS_M = "levelKeys";
     String IS_READY_F = "isReady";
     String RESOURCE_KEY_CN = "net.minecraft.resources.ResourceKey";
+    String GET_CHUNK_SOURCE_M = "getChunkSource";
+    String SERVER_CHUNK_CACHE_CN = "net.minecraft.server.level.ServerChunkCache";
+    String GET_CHUNK_FUTURE_M = "getChunkFuture";
+    String GET_CHUNK_FUTURE_MAIN_THREAD_M = "getChunkFutureMainThread";
+    String ADD_REGION_TICKET_M = "addRegionTicket";
+    String REMOVE_REGION_TICKET_M = "removeRegionTicket";
+    String CHUNK_STATUS_CN = "net.minecraft.world.level.chunk.ChunkStatus";
+    String FULL_F = "FULL";
+    String CHUNK_POS_CN = "net.minecraft.world.level.ChunkPos";
+    String TICKET_TYPE_CN = "net.minecraft.server.level.TicketType";
+    String CREATE_M = "create";
+    String TICK_TIMES_F = "tickTimes";
+    String SAVE_ALL_CHUNKS_M = "saveAllChunks";
 
     String INSTANCE = "instance";
 }
@@ -23,23 +23,42 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.lang.reflect.Method;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
+import org.iz.cs.chunker.ChunkBitmap;
 import org.iz.cs.chunker.Chunker;
 import org.iz.cs.chunker.Configuration;
+import org.iz.cs.chunker.GenerationBudget;
+import org.iz.cs.chunker.GenerationMetrics;
 import org.iz.cs.chunker.GenerationProgress;
+import org.iz.cs.chunker.HeapMonitor;
 import org.iz.cs.chunker.JarClassLoader;
 import org.iz.cs.chunker.Mapping;
+import org.iz.cs.chunker.ProgressBitmap;
+import org.iz.cs.chunker.ProgressCheckpointer;
+import org.iz.cs.chunker.StartupTimeline;
 import org.iz.cs.chunker.io.InputHandler;
 import org.iz.cs.chunker.io.OutputHandler;
-import org.iz.cs.chunker.minecraft.impl.GenerateChunk.GenerateChunkArguments;
+import org.iz.cs.chunker.io.RegionFileScanner;
+import org.iz.cs.chunker.minecraft.BehaviorManager.BehaviorName;
+import org.iz.cs.chunker.minecraft.impl.GenerateChunk.ChunkGenerator;
+import org.iz.cs.chunker.minecraft.impl.GenerateChunkAsync.AsyncChunkGenerator;
+import org.iz.cs.chunker.traversal.ChunkTraversal;
 
 import com.google.gson.Gson;
 
@@ -54,18 +73,29 @@ public class ServerInterface {
 //  private static String GET_PATH_M = "getPath";
 
     private static final String SERVER_THREAD_NAME = "Server thread";
+    private static final String SERVER_PROPERTIES = "server.properties";
+    private static final String LEVEL_NAME = "level-name";
+    private static final String DEFAULT_LEVEL_NAME = "world";
+    private static final long HEAP_RELIEF_TIMEOUT_SECONDS = 60L;
 
     private volatile boolean serverRunning = false;
     private volatile boolean shuttingDown = false;
-    private volatile int lastX = 0;
-    private volatile int lastZ = 0;
+    private final Map<String, GenerationProgress> progressByDimension = new ConcurrentHashMap<>();
+    private final Map<String, ProgressBitmap> bitmapByDimension = new ConcurrentHashMap<>();
+    private volatile ProgressCheckpointer checkpointer = null;
+    private volatile long[] tickTimes = null;
+    private volatile HeapMonitor heapMonitor = null;
+    private volatile GenerationMetrics metrics = null;
+    private long lastHeapRelief;
 
     private InputHandler inputHandler;
     private JarClassLoader loader;
     private BehaviorManager bm;
+    private ServerOps ops;
     private ThreadGroup minecraftThreadGroup;
 
     private Thread serverThread = null;
+    private StartupTimeline startupTimeline;
 
     private ServerInterface(
             JarClassLoader loader,
@@ -77,13 +107,29 @@ public class ServerInterface {
         this.inputHandler = inputHandler;
         this.bm = new BehaviorManager(versionId, new ClassCache(mapping, loader), mapping, this);
 
+        Set<BehaviorName> optional = EnumSet.noneOf(BehaviorName.class);
+        // Also with one chunk in flight, as the limit can be raised during the generation
+        optional.add(GENERATE_CHUNK_ASYNC);
+        if (Configuration.targetMspt != null || Configuration.metricsPort > 0) {
+            optional.add(GET_TICK_TIMES);
+        }
+        if (Configuration.heapHighWatermark > 0 || Configuration.saveProgress) {
+            optional.add(SAVE_ALL_CHUNKS);
+        }
+        bm.resolve(optional);
+
+        // Fail early;
+        bm.checkMappings();
+
         String dedicatedServerClassName = (String) GET_DEDICATED_SERVER_CLASS_NAME.apply(null, bm);
 
         loader.setClassToDecorate(dedicatedServerClassName);
+        String[] readyField = (String[]) GET_READY_FIELD.apply(null, bm);
+        loader.setReadyField(readyField[0], readyField[1]);
 
-        // Fail early;
-        bm.checkMappings();
         bm.checkClasses();
+        bm.bootstrap();
+        this.ops = new ServerOps(bm);
     }
 
     public void startServer(String[] args) throws Exception {
@@ -109,44 +155,89 @@ public class ServerInterface {
         t.start();
         serverRunning = true;
 
+        startupTimeline.mark("server started");
         println("Minecreaft server started");
     }
 
+    /**
+     * Tasks run to start the server, with the times they started and ended
+     */
+    public StartupTimeline getStartupTimeline() {
+        return startupTimeline;
+    }
+
     public Boolean isServerReady() {
-        return (Boolean) IS_SERVER_READY.apply(null, bm);
+        return ops.isServerReady.apply(null);
     }
 
-    public synchronized boolean generateChunks(
+    /**
+     * Generates the chunks of the area in one dimension. Can be called for several dimensions
+     * at the same time, in which case the budget is shared between them.
+     * @return true if all chunks of the area were generated
+     */
+    public boolean generateChunks(
             String dimension,
             int x1, int x2,
             int z1, int z2,
-            GenerationProgress oldProgress) {
+            GenerationProgress oldProgress,
+            GenerationBudget budget) {
+        GenerationProgress dimensionProgress = new GenerationProgress();
+        dimensionProgress.setDimension(dimension);
+        if (oldProgress != null) {
+            dimensionProgress.setX(oldProgress.getX());
+            dimensionProgress.setZ(oldProgress.getZ());
+            dimensionProgress.setRing(oldProgress.getRing());
+        }
+        progressByDimension.put(dimension, dimensionProgress);
+
         if (shuttingDown) {
             return false;
         }
 
-        int total = (x2 - x1 + 1) * (z2 - z1 + 1);
-        int counter = 0;
+        ChunkTraversal traversal = ChunkTraversal.create(
+                Configuration.generationOrder, Configuration.regionOrder,
+                Configuration.centerX, Configuration.centerZ,
+                x1, x2, z1, z2);
+        long total = traversal.getTotal();
+        long counter = 0;
 
-        int step;
+        long step;
         float percentIncrement;
 
         println("Starting generating chunks for area (" + x1 + ", " + z1 + ") (" + x2 + ", " + z2 + "), "
                 + "dimension " + dimension + ". "
                 + "Area contains " + total + " total chunks" );
 
-        int xStart = x1;
-        int zStart = z1;
-        if (oldProgress != null && oldProgress.getX() != null) {
-            xStart = oldProgress.getX();
-            zStart = oldProgress.getZ();
-            if (zStart == z2) {
-                xStart++;
-                zStart = z1;
-            }
-            total = (x2 - xStart + 1) * (z2 - z1) + (z2 - zStart);
-            println("Resuming from (" + xStart + ", " + zStart + "). "
+        ProgressBitmap done = null;
+        long doneCount = 0;
+        if (Configuration.saveProgress) {
+            done = ProgressBitmap.open(Chunker.getProgressBitmapPath(dimension), x1, x2, z1, z2,
+                    oldProgress != null);
+            doneCount = done.cardinality();
+            bitmapByDimension.put(dimension, done);
+        }
+
+        if (doneCount > 0) {
+            total -= doneCount;
+            println("Resuming. " + doneCount + " chunks were generated before. "
                     + "Remaining chunks: " + total);
+        } else if (oldProgress != null && oldProgress.getRing() != null && traversal.hasRings()) {
+            total -= traversal.skipToRing(oldProgress.getRing());
+            println("Resuming from ring " + oldProgress.getRing() + ". "
+                    + "Remaining chunks: " + total);
+        } else if (oldProgress != null && oldProgress.getX() != null) {
+            total -= traversal.skipPast(oldProgress.getX(), oldProgress.getZ());
+            println("Resuming after (" + oldProgress.getX() + ", " + oldProgress.getZ() + "). "
+                    + "Remaining chunks: " + total);
+        }
+
+        ChunkBitmap existing = null;
+        if (Configuration.skipExistingChunks) {
+            existing = RegionFileScanner.scan(getRegionFolder(dimension),
+                    x1, x2, z1, z2, Configuration.skipExistingMargin);
+            long existingCount = countExisting(existing, done, doneCount > 0 ? null : oldProgress, x1, x2, z1, z2);
+            println(existingCount + " chunks in dimension " + dimension + " already exist and will be skipped");
+            total = Math.max(1, total - existingCount);
         }
 
         if (total < 200) {
@@ -158,73 +249,405 @@ public class ServerInterface {
         }
         float progress = 0;
 
-        GenerateChunkArguments generateChunkParameters = new GenerateChunkArguments(dimension, 0, 0);
-
-        long limit = 0;
-        long currentTime = 0;
-        if (Configuration.maxGenerationRate != null) {
-            println("Limiting chunk generation to " + Configuration.maxGenerationRate.toPlainString() + " per second");
-            limit = new BigDecimal(1000).divide(Configuration.maxGenerationRate, 0, RoundingMode.DOWN).longValue();
+        ChunkGenerator generator = ops.generateChunk;
+        Object level = generator.getLevel(dimension);
+        AsyncChunkGenerator asyncGenerator = ops.generateChunkAsync;
+        Object chunkSource = asyncGenerator.getChunkSource(dimension);
+        ChunkRequestWindow window = new ChunkRequestWindow(budget.getMaxChunksInFlight());
+
+        ProgressCheckpointer checkpointer = this.checkpointer;
+        HeapMonitor heapMonitor = this.heapMonitor;
+        GenerationMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.dimensionStarted(dimension, total);
         }
-        long goal = 0L;
 
         long start = System.currentTimeMillis();
-
-        outer:
-        for (int i = xStart; i <= x2; i++) {
-            for (int j = zStart; j <= z2; j++) {
-                generateChunkParameters.setX(x1);
-                generateChunkParameters.setZ(z1);
-
-                if (this.serverThread != null && this.serverThread.isAlive()) {
-                    GENERATE_CHUNK.apply(generateChunkParameters, bm);
-                } else {
-                    break outer;
+        boolean finished = true;
+
+        try {
+            while (traversal.next()) {
+                int i = traversal.getX();
+                int j = traversal.getZ();
+                if ((existing != null && existing.get(i, j))
+                        || (done != null && done.get(i, j))) {
+                    continue;
+                }
+                if (heapMonitor != null && heapMonitor.isUnderPressure()) {
+                    window.drain(this.serverThread);
+                    long pausedAt = System.nanoTime();
+                    boolean relieved = relieveHeapPressure(heapMonitor, dimension);
+                    if (metrics != null) {
+                        metrics.pausedForHeap(System.nanoTime() - pausedAt);
+                    }
+                    if (!relieved) {
+                        finished = false;
+                        break;
+                    }
                 }
 
-                if (Configuration.saveProgress) {
-                    this.lastX = i;
-                    this.lastZ = j;
+                // The limit can be changed at any time, so the way chunks are requested is chosen for each chunk
+                boolean sequential = budget.isSequential();
+                if (sequential && !window.isEmpty()) {
+                    // Chunks requested one at a time must come after the ones in the window
+                    window.drain(this.serverThread);
+                    if (done != null && window.pollRetired()) {
+                        setLastGenerated(dimensionProgress, window.getLastX(), window.getLastZ());
+                    }
                 }
 
-                if (this.shuttingDown) {
-                    break outer;
+                long waitedAt = System.nanoTime();
+                if (!acquire(budget)) {
+                    finished = false;
+                    break;
+                }
+                long requestedAt = 0;
+                if (metrics != null) {
+                    metrics.waitedForBudget(System.nanoTime() - waitedAt);
+                    requestedAt = metrics.chunkRequested();
                 }
 
-                if (limit > 0) {
-                    currentTime = System.currentTimeMillis();
-                    goal += limit;
-                    long diff = goal - (currentTime - start);
-                    if (diff > 0) {
-                        try {
-                            Thread.sleep(diff);
-                        } catch (InterruptedException e) {
-                            println("Chunk generation interrupted");
+                if (sequential) {
+                    boolean generated = false;
+                    try {
+                        generator.generate(level, i, j);
+                        generated = true;
+                    } finally {
+                        budget.release();
+                        if (metrics != null) {
+                            metrics.chunkCompleted(dimension, requestedAt, generated);
+                        }
+                    }
+                    if (done != null) {
+                        done.set(i, j);
+                        setLastGenerated(dimensionProgress, i, j);
+                        if (checkpointer != null) {
+                            checkpointer.chunkGenerated();
+                        }
+                    }
+                } else {
+                    CompletableFuture<?> future;
+                    try {
+                        future = asyncGenerator.generate(chunkSource, i, j);
+                    } catch (RuntimeException e) {
+                        budget.release();
+                        if (metrics != null) {
+                            metrics.chunkCompleted(dimension, requestedAt, false);
                         }
+                        throw e;
+                    }
+                    ProgressBitmap bitmap = done;
+                    long chunkRequestedAt = requestedAt;
+                    future = future.whenComplete((r, e) -> {
+                        budget.release();
+                        if (metrics != null) {
+                            metrics.chunkCompleted(dimension, chunkRequestedAt, e == null);
+                        }
+                        if (e == null && bitmap != null) {
+                            bitmap.set(i, j);
+                            if (checkpointer != null) {
+                                checkpointer.chunkGenerated();
+                            }
+                        }
+                    });
+                    window.setCapacity(budget.getMaxChunksInFlight());
+                    window.submit(i, j, future, this.serverThread);
+                    if (done != null && window.pollRetired()) {
+                        setLastGenerated(dimensionProgress, window.getLastX(), window.getLastZ());
                     }
                 }
 
+                if (this.shuttingDown) {
+                    finished = !traversal.next();
+                    break;
+                }
+
                 if (++counter == step) {
                     counter = 0;
                     progress += percentIncrement;
                     long time = System.currentTimeMillis() - start;
-                    println("Progress: " + progress +
+                    println("Progress " + dimension + ": " + progress +
                             "% Elapsed: " + (float) time/ 1000 + "s "
                             + "Remaining estimate: " + ((time * (100 / progress) - time) / 1000) + "s");
                 }
             }
-            zStart = z1;
+            window.drain(this.serverThread);
+            if (done != null && window.pollRetired()) {
+                setLastGenerated(dimensionProgress, window.getLastX(), window.getLastZ());
+            }
+        } finally {
+            // Also when a chunk failed, so that no request completes after the progress is saved
+            window.abandon(this.serverThread);
+            if (done != null) {
+                bitmapByDimension.remove(dimension, done);
+                try {
+                    long[] generated = done.snapshot();
+                    // The server saves all chunks before its thread ends
+                    if (!isServerThreadAlive() || saveChunks()) {
+                        done.flush(generated);
+                    }
+                    done.close();
+                } catch (IOException | RuntimeException e) {
+                    Chunker.defaultErr.println("Could not save progress of dimension " + dimension);
+                    e.printStackTrace(Chunker.defaultErr);
+                }
+            }
+            synchronized (dimensionProgress) {
+                if (dimensionProgress.getX() != null) {
+                    // Chunks are completed in order, so all rings before this one are done
+                    dimensionProgress.setRing(traversal.getRing(dimensionProgress.getX(), dimensionProgress.getZ()));
+                }
+            }
+            if (metrics != null) {
+                metrics.dimensionFinished(dimension);
+            }
+        }
+        if (finished) {
+            println("Done generating chunk in dimension " + dimension);
+        }
+        return finished;
+    }
+
+    /**
+     * Coordinates are updated together, so that a checkpoint never sees half of an update
+     */
+    private static void setLastGenerated(GenerationProgress progress, int x, int z) {
+        synchronized (progress) {
+            progress.setX(x);
+            progress.setZ(z);
+        }
+    }
+
+    /**
+     * Counts the existing chunks that the traversal visits after resuming, so that chunks already skipped by the
+     * resume or recorded in the progress bitmap are not counted again
+     */
+    private static long countExisting(ChunkBitmap existing, ProgressBitmap done, GenerationProgress oldProgress,
+            int x1, int x2, int z1, int z2) {
+        ChunkTraversal traversal = ChunkTraversal.create(
+                Configuration.generationOrder, Configuration.regionOrder,
+                Configuration.centerX, Configuration.centerZ,
+                x1, x2, z1, z2);
+        if (oldProgress != null && oldProgress.getRing() != null && traversal.hasRings()) {
+            traversal.skipToRing(oldProgress.getRing());
+        } else if (oldProgress != null && oldProgress.getX() != null) {
+            traversal.skipPast(oldProgress.getX(), oldProgress.getZ());
+        }
+        long count = 0;
+        while (traversal.next()) {
+            int i = traversal.getX();
+            int j = traversal.getZ();
+            if (existing.get(i, j) && (done == null || !done.get(i, j))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Saves the generated chunks, so the server can unload them, and waits for the heap usage to drop.
+     * Called by all dimensions that are being generated, but only one of them saves the chunks.
+     * @return false if the server stopped in the meantime
+     */
+    private boolean relieveHeapPressure(HeapMonitor heapMonitor, String dimension) {
+        println("Heap is almost full. Pausing chunk generation in dimension " + dimension
+                + " until chunks are saved and unloaded");
+        saveChunksForHeapRelief();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(HEAP_RELIEF_TIMEOUT_SECONDS);
+        while (!heapMonitor.isRelieved()) {
+            if (!isServerThreadAlive() || shuttingDown) {
+                return false;
+            }
+            if (System.nanoTime() - deadline > 0) {
+                println("Heap usage did not drop in " + HEAP_RELIEF_TIMEOUT_SECONDS + " seconds. "
+                        + "Resuming chunk generation in dimension " + dimension);
+                return true;
+            }
+            try {
+                Thread.sleep(500L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        println("Resuming chunk generation in dimension " + dimension);
+        return true;
+    }
+
+    private synchronized void saveChunksForHeapRelief() {
+        long now = System.nanoTime();
+        if (lastHeapRelief != 0
+                && now - lastHeapRelief < TimeUnit.SECONDS.toNanos(HEAP_RELIEF_TIMEOUT_SECONDS)) {
+            // Already saved for another dimension
+            return;
+        }
+        if (!saveChunks()) {
+            return;
+        }
+        // Collection usage is only updated by a collection, and the saved chunks are unloaded by now
+        System.gc();
+        lastHeapRelief = System.nanoTime();
+    }
+
+    /**
+     * Saves the loaded chunks of all dimensions and waits for them to be written
+     * @return false if the server stopped or the thread was interrupted before the chunks were saved
+     */
+    public boolean saveChunks() {
+        CompletableFuture<?> saved = ops.saveAllChunks.apply(null);
+        while (true) {
+            try {
+                saved.get(100L, TimeUnit.MILLISECONDS);
+                return true;
+            } catch (TimeoutException e) {
+                if (!isServerThreadAlive()) {
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Error saving chunks", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Waits for the budget to allow generating one more chunk
+     * @return false if the server stopped in the meantime
+     */
+    private boolean acquire(GenerationBudget budget) {
+        try {
+            while (!budget.tryAcquire(100L, TimeUnit.MILLISECONDS)) {
+                // Also when paused, which does not stop the server
+                if (!isServerThreadAlive() || shuttingDown) {
+                    return false;
+                }
+            }
+        } catch (InterruptedException e) {
+            println("Chunk generation interrupted");
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (!isServerThreadAlive()) {
+            budget.release();
+            return false;
         }
-        println("Done generating chunk in dimension " + dimension);
         return true;
     }
 
-    public int getLastX() {
-        return lastX;
+    /**
+     * The folder with the region files of a dimension of the world configured in server.properties
+     */
+    private static Path getRegionFolder(String dimension) {
+        Properties serverProperties = new Properties();
+        Path serverPropertiesPath = Paths.get(SERVER_PROPERTIES);
+        if (Files.exists(serverPropertiesPath)) {
+            try (BufferedReader br = Files.newBufferedReader(serverPropertiesPath, StandardCharsets.UTF_8)) {
+                serverProperties.load(br);
+            } catch (IOException e) {
+                throw new IllegalStateException("Error reading " + SERVER_PROPERTIES, e);
+            }
+        }
+        Path world = Paths.get(serverProperties.getProperty(LEVEL_NAME, DEFAULT_LEVEL_NAME));
+        switch (dimension) {
+        case "NETHER":
+            world = world.resolve("DIM-1");
+            break;
+        case "END":
+            world = world.resolve("DIM1");
+            break;
+        default:
+            break;
+        }
+        return world.resolve("region");
+    }
+
+    private boolean isServerThreadAlive() {
+        return this.serverThread != null && this.serverThread.isAlive();
+    }
+
+    /**
+     * Progress of the last call of {@link #generateChunks} for the dimension. Coordinates are
+     * the last chunk generated, or null if no chunk has been generated yet.
+     * Can be called while chunks are being generated, the result is a copy.
+     * @return null if chunks were not generated in the dimension
+     */
+    public GenerationProgress getProgress(String dimension) {
+        GenerationProgress progress = progressByDimension.get(dimension);
+        if (progress == null) {
+            return null;
+        }
+        GenerationProgress result = new GenerationProgress();
+        result.setDimension(dimension);
+        synchronized (progress) {
+            result.setX(progress.getX());
+            result.setZ(progress.getZ());
+            result.setRing(progress.getRing());
+        }
+        return result;
+    }
+
+    /**
+     * Takes the chunks generated so far in all dimensions. The returned task writes them to the disk. It must run
+     * only after {@link #saveChunks()}, otherwise a run that is killed would not generate chunks that were never saved
+     */
+    public Runnable snapshotProgress() {
+        Map<ProgressBitmap, long[]> snapshot = new HashMap<>();
+        for (ProgressBitmap bitmap : bitmapByDimension.values()) {
+            snapshot.put(bitmap, bitmap.snapshot());
+        }
+        GenerationMetrics metrics = this.metrics;
+        return () -> {
+            long flushedAt = System.nanoTime();
+            snapshot.forEach(ProgressBitmap::flush);
+            if (metrics != null) {
+                metrics.savedProgress(System.nanoTime() - flushedAt);
+            }
+        };
     }
 
-    public int getLastZ() {
-        return lastZ;
+    /**
+     * Will be notified of each generated chunk by calls of {@link #generateChunks} that start after this is set
+     */
+    public void setCheckpointer(ProgressCheckpointer checkpointer) {
+        this.checkpointer = checkpointer;
+    }
+
+    /**
+     * Generation is paused while the monitor reports heap pressure. Applies to calls of
+     * {@link #generateChunks} that start after this is set
+     */
+    public void setHeapMonitor(HeapMonitor heapMonitor) {
+        this.heapMonitor = heapMonitor;
+    }
+
+    /**
+     * Will be told about each chunk by calls of {@link #generateChunks} that start after this is set
+     */
+    public void setMetrics(GenerationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Average duration of the recent server ticks in milliseconds
+     */
+    public double getAverageTickMillis() {
+        long[] times = this.tickTimes;
+        if (times == null) {
+            times = ops.getTickTimes.apply(null);
+            this.tickTimes = times;
+        }
+        long sum = 0;
+        int count = 0;
+        for (long time : times) {
+            // Not filled in yet when the server has just started
+            if (time > 0) {
+                sum += time;
+                count++;
+            }
+        }
+        return count == 0 ? 0 : sum / (count * 1_000_000d);
     }
 
     public void scheduleShutdown() {
@@ -305,28 +728,60 @@ public class ServerInterface {
             System.setOut(new OutputHandler());
         }
 
-        JarClassLoader loader = new JarClassLoader(pathToJar.toString());
-
-        JarFile jarFile = loader.getJarFile();
-        String versionId = getServerVersionId(jarFile);
-
-        if (!VersionUtils.isSupported(versionId)) {
-            loader.close();
-            throw new IllegalArgumentException("Version not supported: " + versionId);
-        }
+        StartupTimeline timeline = new StartupTimeline();
 
-        Mapping mapping;
-        if (Configuration.mapping == null) {
-            mapping = Mapping.getMappingFor(versionId);
-        } else {
-            mapping = Mapping.fromFile(Paths.get(Configuration.mapping));
+        CompletableFuture<JarClassLoader> loaderTask = timeline.run("index server jar",
+                () -> new JarClassLoader(pathToJar.toString()));
+        CompletableFuture<String> versionTask = timeline.run("read server version", () -> {
+            try (JarFile jarFile = new JarFile(pathToJar.toFile())) {
+                return getServerVersionId(jarFile);
+            }
+        });
+        CompletableFuture<Void> manifestTask = timeline.run("read version manifest", () -> {
+            VersionUtils.loadVersions();
+            return null;
+        });
+        CompletableFuture<String> supportedTask = versionTask.thenCombine(manifestTask, (versionId, v) -> {
+            if (!VersionUtils.isSupported(versionId)) {
+                throw new IllegalArgumentException("Version not supported: " + versionId);
+            }
+            return versionId;
+        });
+        CompletableFuture<Path> mappingPathTask = timeline.then("download mapping", supportedTask,
+                versionId -> Configuration.mapping == null
+                        ? Mapping.downloadMapping(versionId)
+                        : Paths.get(Configuration.mapping));
+        CompletableFuture<Mapping> mappingTask = timeline.then("read mapping", mappingPathTask, supportedTask,
+                Mapping::fromFile);
+        CompletableFuture<ServerInterface> serverTask = timeline.then("validate behaviors", loaderTask, mappingTask,
+                (loader, mapping) -> new ServerInterface(loader, mapping, supportedTask.join(), inputHandler));
+        // The classes to decorate are set by the constructor, so classes are loaded only after it
+        timeline.then("preload server classes", serverTask, server -> {
+            server.loader.preloadClasses();
+            return null;
+        });
+
+        ServerInterface result;
+        try {
+            result = StartupTimeline.join(serverTask);
+        } catch (Exception e) {
+            loaderTask.thenAccept(ServerInterface::closeQuietly);
+            timeline.close();
+            throw e;
         }
-
-        ServerInterface result = new ServerInterface(loader, mapping, versionId, inputHandler);
+        result.startupTimeline = timeline;
 
         return result;
     }
 
+    private static void closeQuietly(JarClassLoader loader) {
+        try {
+            loader.close();
+        } catch (IOException e) {
+            // not used anymore
+        }
+    }
+
     private final class ServerShutdownListener implements Runnable {
 
         @Override
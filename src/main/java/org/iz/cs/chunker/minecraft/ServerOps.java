@@ -0,0 +1,51 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.minecraft;
+
+import static org.iz.cs.chunker.minecraft.BehaviorManager.BehaviorName.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import org.iz.cs.chunker.minecraft.impl.GenerateChunk.ChunkGenerator;
+import org.iz.cs.chunker.minecraft.impl.GenerateChunkAsync.AsyncChunkGenerator;
+
+/**
+ * The operations on the server, taken once from the resolved and validated behaviors,
+ * so they are called without looking them up or casting their results.
+ * Optional operations are null if their behavior was not resolved.
+ */
+@SuppressWarnings("unchecked")
+public final class ServerOps {
+
+    public final Function<Void, Boolean> isServerReady;
+    public final ChunkGenerator generateChunk;
+    public final AsyncChunkGenerator generateChunkAsync;
+    public final Function<Void, long[]> getTickTimes;
+    public final Function<Void, CompletableFuture<?>> saveAllChunks;
+
+    /**
+     * Must be created after the behaviors are bootstrapped
+     */
+    ServerOps(BehaviorManager bm) {
+        this.isServerReady = bm.get(IS_SERVER_READY);
+        this.generateChunk = (ChunkGenerator) bm.get(GENERATE_CHUNK);
+        this.generateChunkAsync = (AsyncChunkGenerator) bm.find(GENERATE_CHUNK_ASYNC);
+        this.getTickTimes = bm.find(GET_TICK_TIMES);
+        this.saveAllChunks = bm.find(SAVE_ALL_CHUNKS);
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.minecraft;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signaled by the server the moment it is ready. The server class that sets the ready field is
+ * modified to call {@link #setReady} each time it sets the field.
+ */
+public final class ServerReadiness {
+
+    private static final CountDownLatch READY = new CountDownLatch(1);
+
+    private ServerReadiness() {
+    }
+
+    /**
+     * Called by the server with each value it sets to the ready field. Must stay public and static
+     */
+    public static void setReady(boolean ready) {
+        if (ready) {
+            READY.countDown();
+        }
+    }
+
+    /**
+     * @return true if the server became ready, false if the time ran out
+     */
+    public static boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return READY.await(timeout, unit);
+    }
+
+}
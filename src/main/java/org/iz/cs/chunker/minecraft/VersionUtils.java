@@ -15,11 +15,8 @@
  */
 package org.iz.cs.chunker.minecraft;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
 import org.iz.cs.chunker.Mapping;
+import org.iz.cs.chunker.VersionIndex;
 
 public class VersionUtils {
 
@@ -30,22 +27,25 @@ public class VersionUtils {
         return v1_14_4.equals(version) || compare(v19w36a, version) <= 0;
     }
 
-    public static int compare(String o1, String o2) {
-        return Integer.compare(LazyLoader.allVersions.get(o2), LazyLoader.allVersions.get(o1));
+    /**
+     * Reads the versions from the manifest, downloading it if needed. Called at startup so this is
+     * done at the same time as other startup tasks. Otherwise they are read when first needed
+     */
+    public static void loadVersions() {
+        Mapping.getVersionIndex();
     }
 
-    @SuppressWarnings("unchecked")
-    private static class LazyLoader {
-        private static Map<String, Integer> allVersions;
+    public static int compare(String o1, String o2) {
+        VersionIndex versions = Mapping.getVersionIndex();
+        // The manifest lists the newest version first
+        return Integer.compare(getOrder(versions, o2), getOrder(versions, o1));
+    }
 
-        static {
-            List<Object> versions = (List<Object>) Mapping.readManifestJson().get("versions");
-            allVersions = new HashMap<String, Integer>(versions.size());
-            int i = 0;
-            for (Object elem : versions) {
-                Map<String, Object> current = (Map<String, Object>) elem;
-                allVersions.put((String) current.get("id"), i++);
-            }
+    private static int getOrder(VersionIndex versions, String version) {
+        int result = versions.getOrder(version);
+        if (result < 0) {
+            throw new IllegalArgumentException("Version not found in the manifest: " + version);
         }
+        return result;
     }
 }
@@ -17,10 +17,13 @@ package org.iz.cs.chunker.minecraft.impl;
 
 import static org.iz.cs.chunker.minecraft.BehaviorManager.BehaviorName.GET_LEVEL;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.iz.cs.chunker.minecraft.Behavior;
 import org.iz.cs.chunker.minecraft.BehaviorContainer;
@@ -36,6 +39,20 @@ public class GenerateChunk extends BehaviorContainer {
         return result;
     }
 
+    /**
+     * Generates chunks without the per call overhead of {@link Behavior#apply}.
+     * Nothing is allocated by the call itself, which matters when generating thousands of chunks per second
+     */
+    public interface ChunkGenerator {
+
+        /**
+         * The level of the dimension. Must be resolved once, before calling {@link #generate}
+         */
+        Object getLevel(String dimension);
+
+        void generate(Object level, int x, int z);
+    }
+
     public static class GenerateChunkArguments {
         String dimension;
         int x;
@@ -57,9 +74,9 @@ public class GenerateChunk extends BehaviorContainer {
         }
     }
 
-    public static class I_1_14_4 extends Behavior<GenerateChunkArguments, Void> {
+    public static class I_1_14_4 extends Behavior<GenerateChunkArguments, Void> implements ChunkGenerator {
 
-        private Method getChunk_m;
+        private MethodHandle getChunk_mh;
         private Map<String, Object> levelCache;
 
         @Override
@@ -78,10 +95,10 @@ public class GenerateChunk extends BehaviorContainer {
 
         @Override
         protected void bootstrap() {
-            levelCache = new HashMap<>();
+            levelCache = new ConcurrentHashMap<>();
             Class<?> level_cl = classCache.get(Constants.LEVEL_CN);
             try {
-                getChunk_m = level_cl.getDeclaredMethod(
+                Method getChunk_m = level_cl.getDeclaredMethod(
                         mapping.getMethod(
                                 Constants.LEVEL_CN,
                                 Constants.GET_CHUNK_M,
@@ -89,33 +106,48 @@ public class GenerateChunk extends BehaviorContainer {
                                 "int"),
                         int.class,
                         int.class);
-            } catch (NoSuchMethodException | SecurityException e) {
+                // The exact type lets generate use invokeExact without boxing or an argument array
+                getChunk_mh = MethodHandles.lookup()
+                        .unreflect(getChunk_m)
+                        .asType(MethodType.methodType(void.class, Object.class, int.class, int.class));
+            } catch (NoSuchMethodException | SecurityException | IllegalAccessException e) {
                 throw new IllegalStateException(e);
             }
         }
 
         @Override
         public Void apply(GenerateChunkArguments t) {
-            Object level = levelCache.get(t.dimension);
+            generate(getLevel(t.dimension), t.x, t.z);
+            return null;
+        }
+
+        @Override
+        public Object getLevel(String dimension) {
+            Object level = levelCache.get(dimension);
             if (level == null) {
                 try {
-                    level = applyOther(GET_LEVEL, t.dimension);
+                    level = applyOther(GET_LEVEL, dimension);
                     if (level == null) {
-                        throw new IllegalStateException("Server did not load level " + t.dimension);
+                        throw new IllegalStateException("Server did not load level " + dimension);
                     }
-                    levelCache.put(t.dimension, level);
+                    levelCache.put(dimension, level);
                 } catch (IllegalArgumentException
                         | SecurityException e) {
                     throw new RuntimeException(e);
                 }
             }
+            return level;
+        }
 
+        @Override
+        public void generate(Object level, int x, int z) {
             try {
-                getChunk_m.invoke(level, t.x, t.z);
-            } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+                getChunk_mh.invokeExact(level, x, z);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
                 throw new IllegalStateException(e);
             }
-            return null;
         }
     }
 }
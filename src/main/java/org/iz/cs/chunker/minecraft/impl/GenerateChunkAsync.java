@@ -0,0 +1,345 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.minecraft.impl;
+
+import static org.iz.cs.chunker.minecraft.BehaviorManager.BehaviorName.GET_DEDICATED_SERVER_INSTANCE;
+import static org.iz.cs.chunker.minecraft.BehaviorManager.BehaviorName.GET_LEVEL;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import org.iz.cs.chunker.minecraft.Behavior;
+import org.iz.cs.chunker.minecraft.BehaviorContainer;
+import org.iz.cs.chunker.minecraft.CompatibilityException;
+import org.iz.cs.chunker.minecraft.Constants;
+import org.iz.cs.chunker.minecraft.impl.GenerateChunk.GenerateChunkArguments;
+
+/**
+ * Requests a chunk through the asynchronous chunk future API of the server instead of blocking
+ * until it is generated. The returned future completes once the chunk reached FULL status, and completes
+ * exceptionally if the server could not load or generate the chunk.
+ */
+public class GenerateChunkAsync extends BehaviorContainer {
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Map<String, Class> getBehaviors() {
+        Map<String, Class> result = new HashMap<>();
+        result.put("1.14.4", I_1_14_4.class);
+        return result;
+    }
+
+    /**
+     * Requests chunks without the per call overhead of {@link Behavior#apply}
+     */
+    public interface AsyncChunkGenerator {
+
+        /**
+         * The chunk source of the dimension. Must be resolved once, before calling {@link #generate}
+         */
+        Object getChunkSource(String dimension);
+
+        /**
+         * @return a future that completes once the chunk is generated
+         */
+        CompletableFuture<?> generate(Object chunkSource, int x, int z);
+    }
+
+    public static class I_1_14_4 extends Behavior<GenerateChunkArguments, CompletableFuture<?>>
+            implements AsyncChunkGenerator {
+
+        private static final String TICKET_NAME = "chunker";
+        /**
+         * The chunk futures of the server complete with the chunk or the reason it failed. Not obfuscated
+         */
+        private static final String EITHER_CN = "com.mojang.datafixers.util.Either";
+        private static final String LEFT_M = "left";
+
+        private Method getChunkSource_m;
+        private MethodHandle getChunkFuture_mh;
+        private MethodHandle addRegionTicket_mh;
+        private MethodHandle removeRegionTicket_mh;
+        private MethodHandle chunkPos_mh;
+        private Object fullStatus;
+        private Object ticketType;
+
+        private Map<String, Object> chunkSourceCache;
+        private volatile Executor serverExecutor;
+        private volatile Method left_m;
+        private volatile boolean leftResolved = false;
+
+        @Override
+        public boolean checkMappings() {
+            validateClassMapping(Constants.LEVEL_CN);
+            validateClassMapping(Constants.SERVER_CHUNK_CACHE_CN);
+            validateClassMapping(Constants.CHUNK_STATUS_CN);
+            validateClassMapping(Constants.CHUNK_POS_CN);
+            validateClassMapping(Constants.TICKET_TYPE_CN);
+            validateMethodMapping(Constants.LEVEL_CN, Constants.GET_CHUNK_SOURCE_M);
+            validateFieldMapping(Constants.CHUNK_STATUS_CN, Constants.FULL_F);
+            validateMethodMapping(Constants.TICKET_TYPE_CN, Constants.CREATE_M,
+                    "java.lang.String", "java.util.Comparator");
+            validateMethodMapping(Constants.SERVER_CHUNK_CACHE_CN, Constants.ADD_REGION_TICKET_M,
+                    Constants.TICKET_TYPE_CN, Constants.CHUNK_POS_CN, "int", "java.lang.Object");
+            validateMethodMapping(Constants.SERVER_CHUNK_CACHE_CN, Constants.REMOVE_REGION_TICKET_M,
+                    Constants.TICKET_TYPE_CN, Constants.CHUNK_POS_CN, "int", "java.lang.Object");
+            if (getChunkFutureName() == null) {
+                throw new CompatibilityException("Method " + Constants.GET_CHUNK_FUTURE_M
+                        + " mapping not found in class " + Constants.SERVER_CHUNK_CACHE_CN);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean checkClasses() {
+            validateClass(Constants.LEVEL_CN);
+            validateClass(Constants.SERVER_CHUNK_CACHE_CN);
+            validateClass(Constants.CHUNK_STATUS_CN);
+            validateClass(Constants.CHUNK_POS_CN);
+            validateClass(Constants.TICKET_TYPE_CN);
+            validateMethod(Constants.SERVER_CHUNK_CACHE_CN, getChunkFutureName(),
+                    "int", "int", Constants.CHUNK_STATUS_CN, "boolean");
+            validateMethod(Constants.SERVER_CHUNK_CACHE_CN, Constants.ADD_REGION_TICKET_M,
+                    Constants.TICKET_TYPE_CN, Constants.CHUNK_POS_CN, "int", "java.lang.Object");
+            validateMethod(Constants.SERVER_CHUNK_CACHE_CN, Constants.REMOVE_REGION_TICKET_M,
+                    Constants.TICKET_TYPE_CN, Constants.CHUNK_POS_CN, "int", "java.lang.Object");
+            validateField(Constants.CHUNK_STATUS_CN, Constants.FULL_F);
+            return true;
+        }
+
+        /**
+         * Newer versions split the method in a thread safe wrapper and the actual implementation
+         * that must run on the server thread. Older versions only have the latter.
+         */
+        private String getChunkFutureName() {
+            String[] parameters = { "int", "int", Constants.CHUNK_STATUS_CN, "boolean" };
+            if (mapping.getMethod(Constants.SERVER_CHUNK_CACHE_CN,
+                    Constants.GET_CHUNK_FUTURE_MAIN_THREAD_M, parameters) != null) {
+                return Constants.GET_CHUNK_FUTURE_MAIN_THREAD_M;
+            }
+            if (mapping.getMethod(Constants.SERVER_CHUNK_CACHE_CN,
+                    Constants.GET_CHUNK_FUTURE_M, parameters) != null) {
+                return Constants.GET_CHUNK_FUTURE_M;
+            }
+            return null;
+        }
+
+        @Override
+        protected void bootstrap() {
+            chunkSourceCache = new ConcurrentHashMap<>();
+            Class<?> level_cl = classCache.get(Constants.LEVEL_CN);
+            Class<?> scc_cl = classCache.get(Constants.SERVER_CHUNK_CACHE_CN);
+            Class<?> cs_cl = classCache.get(Constants.CHUNK_STATUS_CN);
+            Class<?> cp_cl = classCache.get(Constants.CHUNK_POS_CN);
+            Class<?> tt_cl = classCache.get(Constants.TICKET_TYPE_CN);
+            try {
+                getChunkSource_m = level_cl.getMethod(
+                        mapping.getMethod(Constants.LEVEL_CN, Constants.GET_CHUNK_SOURCE_M));
+
+                // Exact types let the calls use invokeExact without boxing or an argument array
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                MethodType ticketType_mt = MethodType.methodType(
+                        void.class, Object.class, Object.class, Object.class, int.class, Object.class);
+
+                String getChunkFutureName = getChunkFutureName();
+                Method getChunkFuture_m = scc_cl.getDeclaredMethod(
+                        mapping.getMethod(
+                                Constants.SERVER_CHUNK_CACHE_CN,
+                                getChunkFutureName,
+                                "int", "int", Constants.CHUNK_STATUS_CN, "boolean"),
+                        int.class, int.class, cs_cl, boolean.class);
+                getChunkFuture_m.setAccessible(true);
+                getChunkFuture_mh = lookup.unreflect(getChunkFuture_m).asType(MethodType.methodType(
+                        CompletableFuture.class, Object.class, int.class, int.class, Object.class, boolean.class));
+
+                Method addRegionTicket_m = scc_cl.getDeclaredMethod(
+                        mapping.getMethod(
+                                Constants.SERVER_CHUNK_CACHE_CN,
+                                Constants.ADD_REGION_TICKET_M,
+                                Constants.TICKET_TYPE_CN, Constants.CHUNK_POS_CN, "int", "java.lang.Object"),
+                        tt_cl, cp_cl, int.class, Object.class);
+                addRegionTicket_m.setAccessible(true);
+                addRegionTicket_mh = lookup.unreflect(addRegionTicket_m).asType(ticketType_mt);
+                Method removeRegionTicket_m = scc_cl.getDeclaredMethod(
+                        mapping.getMethod(
+                                Constants.SERVER_CHUNK_CACHE_CN,
+                                Constants.REMOVE_REGION_TICKET_M,
+                                Constants.TICKET_TYPE_CN, Constants.CHUNK_POS_CN, "int", "java.lang.Object"),
+                        tt_cl, cp_cl, int.class, Object.class);
+                removeRegionTicket_m.setAccessible(true);
+                removeRegionTicket_mh = lookup.unreflect(removeRegionTicket_m).asType(ticketType_mt);
+
+                chunkPos_mh = lookup.unreflectConstructor(cp_cl.getConstructor(int.class, int.class))
+                        .asType(MethodType.methodType(Object.class, int.class, int.class));
+
+                fullStatus = cs_cl.getDeclaredField(mapping.getField(Constants.CHUNK_STATUS_CN, Constants.FULL_F))
+                        .get(null);
+
+                // Chunks requested asynchronously are only kept by a ticket that expires after a tick.
+                // A ticket type without expiry keeps them loaded until they are generated.
+                Method create_m = tt_cl.getDeclaredMethod(
+                        mapping.getMethod(Constants.TICKET_TYPE_CN, Constants.CREATE_M,
+                                "java.lang.String", "java.util.Comparator"),
+                        String.class, Comparator.class);
+                create_m.setAccessible(true);
+                ticketType = create_m.invoke(null, TICKET_NAME, Comparator.<Long>naturalOrder());
+            } catch (NoSuchMethodException
+                    | NoSuchFieldException
+                    | SecurityException
+                    | IllegalAccessException
+                    | InvocationTargetException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public CompletableFuture<?> apply(GenerateChunkArguments t) {
+            return generate(getChunkSource(t.dimension), t.x, t.z);
+        }
+
+        @Override
+        public CompletableFuture<?> generate(Object chunkSource, int x, int z) {
+            Executor executor = getServerExecutor();
+            return CompletableFuture
+                    .supplyAsync(() -> requestChunk(chunkSource, x, z), executor)
+                    .thenCompose(request -> request.chunk
+                            .whenCompleteAsync((r, e) -> request.release(), executor))
+                    .thenApply(result -> checkGenerated(result, x, z));
+        }
+
+        /**
+         * @throws IllegalStateException if the result is the reason the chunk failed instead of the chunk
+         */
+        private Object checkGenerated(Object result, int x, int z) {
+            Method left = getLeftMethod(result);
+            if (left == null) {
+                return result;
+            }
+            Optional<?> chunk;
+            try {
+                chunk = (Optional<?>) left.invoke(result);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException(e);
+            }
+            if (!chunk.isPresent()) {
+                throw new IllegalStateException("Chunk (" + x + ", " + z + ") was not generated: " + result);
+            }
+            return result;
+        }
+
+        /**
+         * Found from the first result, as Either is loaded by the server
+         * @return null if the result is not an Either
+         */
+        private Method getLeftMethod(Object result) {
+            if (leftResolved) {
+                return left_m;
+            }
+            Method method = null;
+            for (Class<?> cl = result == null ? null : result.getClass(); cl != null; cl = cl.getSuperclass()) {
+                if (EITHER_CN.equals(cl.getName())) {
+                    try {
+                        method = cl.getMethod(LEFT_M);
+                    } catch (NoSuchMethodException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    break;
+                }
+            }
+            left_m = method;
+            leftResolved = true;
+            return method;
+        }
+
+        @Override
+        public Object getChunkSource(String dimension) {
+            Object chunkSource = chunkSourceCache.get(dimension);
+            if (chunkSource == null) {
+                try {
+                    chunkSource = getChunkSource_m.invoke(applyOther(GET_LEVEL, dimension));
+                } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+                    throw new IllegalStateException(e);
+                }
+                chunkSourceCache.put(dimension, chunkSource);
+            }
+            return chunkSource;
+        }
+
+        private Executor getServerExecutor() {
+            Executor result = serverExecutor;
+            if (result == null) {
+                result = (Executor) applyOther(GET_DEDICATED_SERVER_INSTANCE, null);
+                serverExecutor = result;
+            }
+            return result;
+        }
+
+        /**
+         * Must be called on the server thread
+         */
+        private ChunkRequest requestChunk(Object chunkSource, int x, int z) {
+            try {
+                Object chunkPos = (Object) chunkPos_mh.invokeExact(x, z);
+                Object key = Long.valueOf(((long) x & 0xFFFFFFFFL) | (((long) z & 0xFFFFFFFFL) << 32));
+                addRegionTicket_mh.invokeExact(chunkSource, ticketType, chunkPos, 0, key);
+                CompletableFuture<?> chunk = (CompletableFuture<?>) getChunkFuture_mh.invokeExact(
+                        chunkSource, x, z, fullStatus, true);
+                return new ChunkRequest(chunkSource, chunkPos, key, chunk);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private final class ChunkRequest {
+            private final Object chunkSource;
+            private final Object chunkPos;
+            private final Object key;
+            private final CompletableFuture<?> chunk;
+
+            private ChunkRequest(Object chunkSource, Object chunkPos, Object key, CompletableFuture<?> chunk) {
+                this.chunkSource = chunkSource;
+                this.chunkPos = chunkPos;
+                this.key = key;
+                this.chunk = chunk;
+            }
+
+            /**
+             * Must be called on the server thread
+             */
+            private void release() {
+                try {
+                    removeRegionTicket_mh.invokeExact(chunkSource, ticketType, chunkPos, 0, key);
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+}
@@ -21,6 +21,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.iz.cs.chunker.minecraft.Behavior;
 import org.iz.cs.chunker.minecraft.BehaviorContainer;
@@ -69,7 +70,7 @@ public class GetLevel extends BehaviorContainer {
 
         @Override
         protected void bootstrap() {
-            levelCache = new HashMap<>();
+            levelCache = new ConcurrentHashMap<>();
             try {
                 Class<?> mc_s_cl = classCache.get(Constants.MINECRAFT_SERVER_CN);
                 Class<?> rk_cl = classCache.get(Constants.RESOURCE_KEY_CN);
@@ -140,7 +141,7 @@ public class GetLevel extends BehaviorContainer {
 
         @Override
         protected void bootstrap() {
-            levelCache = new HashMap<>();
+            levelCache = new ConcurrentHashMap<>();
             try {
                 Class<?> mc_s_cl = classCache.get(Constants.MINECRAFT_SERVER_CN);
                 Class<?> rk_cl = classCache.get(Constants.RESOURCE_KEY_CN);
@@ -211,7 +212,7 @@ public class GetLevel extends BehaviorContainer {
 
         @Override
         protected void bootstrap() {
-            levelCache = new HashMap<>();
+            levelCache = new ConcurrentHashMap<>();
             try {
                 Class<?> mc_s_cl = classCache.get(Constants.MINECRAFT_SERVER_CN);
                 Class<?> rk_cl = classCache.get(DIMENSION_TYPE_CL);
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.minecraft.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.iz.cs.chunker.minecraft.Behavior;
+import org.iz.cs.chunker.minecraft.BehaviorContainer;
+import org.iz.cs.chunker.minecraft.Constants;
+
+/**
+ * Obfuscated names of the class with the field set when the server is ready and of the field.
+ * Only uses the mapping, so it can be applied before the server classes are loaded
+ */
+public class GetReadyField extends BehaviorContainer {
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Map<String, Class> getBehaviors() {
+        Map<String, Class> result = new HashMap<>();
+        result.put("1.14.4", I_1_14_4.class);
+        return result;
+    }
+
+    public static class I_1_14_4 extends Behavior<Void, String[]> {
+
+        @Override
+        public boolean checkMappings() {
+            validateClassMapping(Constants.MINECRAFT_SERVER_CN);
+            validateFieldMapping(Constants.MINECRAFT_SERVER_CN, Constants.IS_READY_F);
+            return true;
+        }
+
+        @Override
+        public String[] apply(Void t) {
+            return new String[] {
+                    mapping.getClassName(Constants.MINECRAFT_SERVER_CN),
+                    mapping.getField(Constants.MINECRAFT_SERVER_CN, Constants.IS_READY_F)
+            };
+        }
+    }
+
+}
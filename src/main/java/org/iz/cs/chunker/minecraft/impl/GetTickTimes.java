@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.minecraft.impl;
+
+import static org.iz.cs.chunker.minecraft.BehaviorManager.BehaviorName.GET_DEDICATED_SERVER_INSTANCE;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.iz.cs.chunker.minecraft.Behavior;
+import org.iz.cs.chunker.minecraft.BehaviorContainer;
+import org.iz.cs.chunker.minecraft.Constants;
+
+/**
+ * The durations in nanoseconds of the last 100 server ticks. The server keeps overwriting
+ * the returned array, so it can be read again later without calling this.
+ */
+public class GetTickTimes extends BehaviorContainer {
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Map<String, Class> getBehaviors() {
+        Map<String, Class> result = new HashMap<>();
+        result.put("1.14.4", I_1_14_4.class);
+        return result;
+    }
+
+    public static class I_1_14_4 extends Behavior<Void, long[]> {
+
+        private Field tickTimes_f;
+
+        @Override
+        public boolean checkMappings() {
+            validateClassMapping(Constants.MINECRAFT_SERVER_CN);
+            validateFieldMapping(Constants.MINECRAFT_SERVER_CN, Constants.TICK_TIMES_F);
+            return true;
+        }
+
+        @Override
+        public boolean checkClasses() {
+            validateClass(Constants.MINECRAFT_SERVER_CN);
+            validateField(Constants.MINECRAFT_SERVER_CN, Constants.TICK_TIMES_F);
+            return true;
+        }
+
+        @Override
+        protected void bootstrap() {
+            Class<?> mc_server_cl = classCache.get(Constants.MINECRAFT_SERVER_CN);
+            try {
+                tickTimes_f = mc_server_cl.getDeclaredField(
+                        mapping.getField(Constants.MINECRAFT_SERVER_CN, Constants.TICK_TIMES_F));
+                tickTimes_f.setAccessible(true);
+            } catch (NoSuchFieldException | SecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public long[] apply(Void v) {
+            try {
+                return (long[]) tickTimes_f.get(applyOther(GET_DEDICATED_SERVER_INSTANCE, null));
+            } catch (IllegalArgumentException | IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+    }
+}
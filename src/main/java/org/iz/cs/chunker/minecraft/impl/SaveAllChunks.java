@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.minecraft.impl;
+
+import static org.iz.cs.chunker.minecraft.BehaviorManager.BehaviorName.GET_DEDICATED_SERVER_INSTANCE;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.iz.cs.chunker.minecraft.Behavior;
+import org.iz.cs.chunker.minecraft.BehaviorContainer;
+import org.iz.cs.chunker.minecraft.Constants;
+
+/**
+ * Saves the loaded chunks of all levels and waits for them to be written, so that chunks
+ * without tickets can be unloaded without holding on to their data. Runs on the server thread.
+ * The returned future completes once the chunks are saved.
+ */
+public class SaveAllChunks extends BehaviorContainer {
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Map<String, Class> getBehaviors() {
+        Map<String, Class> result = new HashMap<>();
+        result.put("1.14.4", I_1_14_4.class);
+        return result;
+    }
+
+    public static class I_1_14_4 extends Behavior<Void, CompletableFuture<?>> {
+
+        private Method saveAllChunks_m;
+
+        @Override
+        public boolean checkMappings() {
+            validateClassMapping(Constants.MINECRAFT_SERVER_CN);
+            validateMethodMapping(Constants.MINECRAFT_SERVER_CN, Constants.SAVE_ALL_CHUNKS_M,
+                    "boolean", "boolean", "boolean");
+            return true;
+        }
+
+        @Override
+        public boolean checkClasses() {
+            validateClass(Constants.MINECRAFT_SERVER_CN);
+            validateMethod(Constants.MINECRAFT_SERVER_CN, Constants.SAVE_ALL_CHUNKS_M,
+                    "boolean", "boolean", "boolean");
+            return true;
+        }
+
+        @Override
+        protected void bootstrap() {
+            Class<?> mc_server_cl = classCache.get(Constants.MINECRAFT_SERVER_CN);
+            try {
+                saveAllChunks_m = mc_server_cl.getDeclaredMethod(
+                        mapping.getMethod(Constants.MINECRAFT_SERVER_CN, Constants.SAVE_ALL_CHUNKS_M,
+                                "boolean", "boolean", "boolean"),
+                        boolean.class, boolean.class, boolean.class);
+                saveAllChunks_m.setAccessible(true);
+            } catch (NoSuchMethodException | SecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public CompletableFuture<?> apply(Void v) {
+            Object server = applyOther(GET_DEDICATED_SERVER_INSTANCE, null);
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    // Without log messages, waiting for the writes, not forced if saving is turned off
+                    saveAllChunks_m.invoke(server, true, true, false);
+                } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+                    throw new IllegalStateException(e);
+                }
+            }, (Executor) server);
+        }
+
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.traversal;
+
+/**
+ * Walks over the chunks of a rectangular area in a specific order.
+ * Usage: <code>while (traversal.next()) { traversal.getX(); traversal.getZ(); }</code>
+ */
+public abstract class ChunkTraversal {
+
+    protected final int x1;
+    protected final int x2;
+    protected final int z1;
+    protected final int z2;
+
+    protected int x;
+    protected int z;
+
+    protected ChunkTraversal(int x1, int x2, int z1, int z2) {
+        this.x1 = x1;
+        this.x2 = x2;
+        this.z1 = z1;
+        this.z2 = z2;
+    }
+
+    public static ChunkTraversal create(
+            GenerationOrder order,
+            RegionOrder regionOrder,
+            int centerX, int centerZ,
+            int x1, int x2,
+            int z1, int z2) {
+        switch (order) {
+        case REGIONS:
+            return new RegionTraversal(regionOrder, x1, x2, z1, z2);
+        case SQUARE_SPIRAL:
+            return new SquareSpiralTraversal(centerX, centerZ, x1, x2, z1, z2);
+        case CIRCULAR_SPIRAL:
+            return new CircularSpiralTraversal(centerX, centerZ, x1, x2, z1, z2);
+        case ROWS:
+        default:
+            return new RowTraversal(x1, x2, z1, z2);
+        }
+    }
+
+    /**
+     * Moves to the next chunk
+     * @return false if there are no more chunks
+     */
+    public abstract boolean next();
+
+    public int getX() {
+        return x;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    public long getTotal() {
+        return ((long) x2 - x1 + 1) * ((long) z2 - z1 + 1);
+    }
+
+    /**
+     * Whether the order generates rings around a center
+     */
+    public boolean hasRings() {
+        return false;
+    }
+
+    /**
+     * The ring containing the chunk, for orders that generate rings around a center
+     * @return null if the order does not use rings
+     */
+    public Integer getRing(int x, int z) {
+        return null;
+    }
+
+    /**
+     * Moves to the start of a ring, so that the next call of {@link #next()} returns its first chunk.
+     * Only supported by orders that use rings
+     * @return the number of chunks skipped
+     */
+    public long skipToRing(int ring) {
+        throw new UnsupportedOperationException("Order does not use rings");
+    }
+
+    /**
+     * Moves past the given chunk, so that the next call of {@link #next()} returns the chunk after it
+     * @return the number of chunks skipped, including the given one. 0 if the chunk is not part of the traversal
+     */
+    public long skipPast(int lastX, int lastZ) {
+        if (lastX < x1 || lastX > x2 || lastZ < z1 || lastZ > z2) {
+            return 0;
+        }
+        long skipped = 0;
+        while (next()) {
+            skipped++;
+            if (x == lastX && z == lastZ) {
+                return skipped;
+            }
+        }
+        return skipped;
+    }
+
+}
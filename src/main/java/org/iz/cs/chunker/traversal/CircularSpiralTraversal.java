@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.traversal;
+
+/**
+ * Circular rings around the center. Ring n contains the chunks whose distance from the center
+ * is at least n and less than n + 1.
+ */
+final class CircularSpiralTraversal extends RingTraversal {
+
+    private int dx;
+    private int segment;
+    private int segmentEnd;
+
+    CircularSpiralTraversal(int centerX, int centerZ, int x1, int x2, int z1, int z2) {
+        super(centerX, centerZ, x1, x2, z1, z2);
+    }
+
+    @Override
+    protected int ringOf(int dx, int dz) {
+        return (int) floorSqrt((long) dx * dx + (long) dz * dz);
+    }
+
+    @Override
+    protected boolean startRing() {
+        dx = Math.max(-ring, x1 - cx);
+        segment = 0;
+        return seek();
+    }
+
+    @Override
+    protected boolean advanceInRing() {
+        if (z < segmentEnd) {
+            z++;
+            return true;
+        }
+        segment++;
+        return seek();
+    }
+
+    /**
+     * Finds the first chunk inside the area, starting from the current column and segment.
+     * Each column of a ring has up to two segments - one on each side of the center
+     */
+    private boolean seek() {
+        int maxDx = Math.min(ring, x2 - cx);
+        for (; dx <= maxDx; dx++, segment = 0) {
+            long dx2 = (long) dx * dx;
+            long outer = (long) (ring + 1) * (ring + 1) - 1 - dx2;
+            if (outer < 0) {
+                continue;
+            }
+            long inner = (long) ring * ring - dx2;
+            long hi = floorSqrt(outer);
+            long lo = inner <= 0 ? 0 : ceilSqrt(inner);
+            if (lo > hi) {
+                continue;
+            }
+            int segments = lo == 0 ? 1 : 2;
+            for (; segment < segments; segment++) {
+                long from;
+                long to;
+                if (lo == 0) {
+                    from = -hi;
+                    to = hi;
+                } else if (segment == 0) {
+                    from = -hi;
+                    to = -lo;
+                } else {
+                    from = lo;
+                    to = hi;
+                }
+                from = Math.max(from + cz, z1);
+                to = Math.min(to + cz, z2);
+                if (from <= to) {
+                    x = cx + dx;
+                    z = (int) from;
+                    segmentEnd = (int) to;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected long countBefore(int ring) {
+        if (ring <= 0) {
+            return 0;
+        }
+        long result = 0;
+        long limit = (long) ring * ring - 1;
+        int fromDx = Math.max(-ring, x1 - cx);
+        int toDx = Math.min(ring, x2 - cx);
+        for (int i = fromDx; i <= toDx; i++) {
+            long remaining = limit - (long) i * i;
+            if (remaining < 0) {
+                continue;
+            }
+            long m = floorSqrt(remaining);
+            result += overlap(cz - m, cz + m, z1, z2);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.traversal;
+
+public enum GenerationOrder {
+    /**
+     * Column by column over the whole area
+     */
+    ROWS,
+    /**
+     * Region file by region file (32x32 chunks). Each region file is completed before moving to the next one
+     */
+    REGIONS,
+    /**
+     * Square rings around a center, starting from the center
+     */
+    SQUARE_SPIRAL,
+    /**
+     * Circular rings around a center, starting from the center
+     */
+    CIRCULAR_SPIRAL,
+    ;
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.traversal;
+
+/**
+ * The order in which regions are visited by {@link GenerationOrder#REGIONS}
+ */
+public enum RegionOrder {
+    ROWS,
+    /**
+     * Z-order curve. Consecutive regions are mostly close to each other
+     */
+    MORTON,
+    /**
+     * Hilbert curve. Consecutive regions are usually neighbours. The curve covers the smallest power of two
+     * square around the area, so it jumps where it leaves the area and comes back in
+     */
+    HILBERT,
+    ;
+}
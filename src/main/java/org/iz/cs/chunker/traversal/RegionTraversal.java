@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.traversal;
+
+import java.util.Arrays;
+
+/**
+ * Generates all chunks of a region file (32x32 chunks) before moving to the next region,
+ * so that the server opens, fills and closes each region file once.
+ */
+final class RegionTraversal extends ChunkTraversal {
+
+    private static final int REGION_SHIFT = 5;
+    private static final int REGION_SIZE = 1 << REGION_SHIFT;
+
+    private final int rx1;
+    private final int rz1;
+    private final int regionsZ;
+    /**
+     * Indexes of the regions (relative x * regionsZ + relative z) in the order they are visited
+     */
+    private final int[] regions;
+    private int regionIndex = -1;
+
+    private int cx1;
+    private int cx2;
+    private int cz1;
+    private int cz2;
+
+    RegionTraversal(RegionOrder order, int x1, int x2, int z1, int z2) {
+        super(x1, x2, z1, z2);
+        this.rx1 = x1 >> REGION_SHIFT;
+        this.rz1 = z1 >> REGION_SHIFT;
+        int regionsX = (x2 >> REGION_SHIFT) - rx1 + 1;
+        this.regionsZ = (z2 >> REGION_SHIFT) - rz1 + 1;
+        this.regions = orderRegions(order, regionsX, regionsZ);
+    }
+
+    @Override
+    public boolean next() {
+        if (regionIndex >= 0 && regionIndex < regions.length) {
+            if (z < cz2) {
+                z++;
+                return true;
+            }
+            if (x < cx2) {
+                z = cz1;
+                x++;
+                return true;
+            }
+        }
+        if (regionIndex + 1 >= regions.length) {
+            regionIndex = regions.length;
+            return false;
+        }
+        regionIndex++;
+        int rx = rx1 + regions[regionIndex] / regionsZ;
+        int rz = rz1 + regions[regionIndex] % regionsZ;
+        cx1 = Math.max(x1, rx << REGION_SHIFT);
+        cx2 = Math.min(x2, (rx << REGION_SHIFT) + REGION_SIZE - 1);
+        cz1 = Math.max(z1, rz << REGION_SHIFT);
+        cz2 = Math.min(z2, (rz << REGION_SHIFT) + REGION_SIZE - 1);
+        x = cx1;
+        z = cz1;
+        return true;
+    }
+
+    private static int[] orderRegions(RegionOrder order, int regionsX, int regionsZ) {
+        int count = regionsX * regionsZ;
+        int[] result = new int[count];
+        if (order == RegionOrder.ROWS) {
+            for (int i = 0; i < count; i++) {
+                result[i] = i;
+            }
+            return result;
+        }
+
+        int side = Integer.highestOneBit(Math.max(regionsX, regionsZ) - 1) << 1;
+        if (side == 0) {
+            side = 1;
+        }
+        // Curve position in the high bits, region index in the low bits.
+        // The sign bit is flipped so that the keys sort as unsigned values
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            int rx = i / regionsZ;
+            int rz = i % regionsZ;
+            long position = order == RegionOrder.HILBERT
+                    ? hilbert(side, rx, rz)
+                    : morton(rx, rz);
+            keys[i] = ((position << 32) | i) ^ Long.MIN_VALUE;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < count; i++) {
+            result[i] = (int) keys[i];
+        }
+        return result;
+    }
+
+    /**
+     * Interleaves the bits of the coordinates. Coordinates are relative and smaller than 2^16
+     */
+    private static long morton(int x, int z) {
+        long result = 0;
+        for (int bit = 0; bit < 16; bit++) {
+            result |= (long) ((x >> bit) & 1) << (2 * bit);
+            result |= (long) ((z >> bit) & 1) << (2 * bit + 1);
+        }
+        return result;
+    }
+
+    /**
+     * Distance along a Hilbert curve filling a square with the given side (a power of 2)
+     */
+    private static long hilbert(int side, int x, int z) {
+        long result = 0;
+        for (int s = side / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int rz = (z & s) > 0 ? 1 : 0;
+            result += (long) s * s * ((3 * rx) ^ rz);
+            if (rz == 0) {
+                if (rx == 1) {
+                    x = side - 1 - x;
+                    z = side - 1 - z;
+                }
+                int t = x;
+                x = z;
+                z = t;
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.traversal;
+
+/**
+ * Generates rings of chunks around a center, starting from the center and moving outwards.
+ * Parts of the rings outside of the area are skipped.
+ */
+abstract class RingTraversal extends ChunkTraversal {
+
+    protected final int cx;
+    protected final int cz;
+    protected final int lastRing;
+
+    protected int ring = -1;
+    private boolean inRing = false;
+
+    protected RingTraversal(int centerX, int centerZ, int x1, int x2, int z1, int z2) {
+        super(x1, x2, z1, z2);
+        this.cx = centerX;
+        this.cz = centerZ;
+        this.lastRing = ringOf(Math.max(Math.abs(x1 - cx), Math.abs(x2 - cx)),
+                Math.max(Math.abs(z1 - cz), Math.abs(z2 - cz)));
+    }
+
+    /**
+     * The ring containing a chunk at the given offset from the center
+     */
+    protected abstract int ringOf(int dx, int dz);
+
+    /**
+     * Positions at the first chunk of the current ring that is inside the area
+     * @return false if the ring has no chunks inside the area
+     */
+    protected abstract boolean startRing();
+
+    /**
+     * Moves to the next chunk of the current ring that is inside the area
+     * @return false if there are no more chunks in the ring
+     */
+    protected abstract boolean advanceInRing();
+
+    /**
+     * The number of chunks in the area that are closer to the center than the given ring
+     */
+    protected abstract long countBefore(int ring);
+
+    @Override
+    public boolean next() {
+        if (inRing && advanceInRing()) {
+            return true;
+        }
+        inRing = false;
+        while (ring < lastRing) {
+            ring++;
+            if (startRing()) {
+                inRing = true;
+                return true;
+            }
+        }
+        ring = lastRing + 1;
+        return false;
+    }
+
+    @Override
+    public boolean hasRings() {
+        return true;
+    }
+
+    @Override
+    public Integer getRing(int x, int z) {
+        return ringOf(x - cx, z - cz);
+    }
+
+    @Override
+    public long skipToRing(int ring) {
+        int target = Math.max(0, Math.min(ring, lastRing + 1));
+        this.ring = target - 1;
+        this.inRing = false;
+        return countBefore(target);
+    }
+
+    /**
+     * Number of values in [from, to] that are also in [min, max]
+     */
+    protected static long overlap(long from, long to, long min, long max) {
+        return Math.max(0L, Math.min(to, max) - Math.max(from, min) + 1);
+    }
+
+    protected static long floorSqrt(long n) {
+        long result = (long) Math.sqrt((double) n);
+        while (result * result > n) {
+            result--;
+        }
+        while ((result + 1) * (result + 1) <= n) {
+            result++;
+        }
+        return result;
+    }
+
+    protected static long ceilSqrt(long n) {
+        long result = floorSqrt(n);
+        return result * result < n ? result + 1 : result;
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.traversal;
+
+/**
+ * Goes through the area one column (same x) at a time
+ */
+final class RowTraversal extends ChunkTraversal {
+
+    private boolean started = false;
+
+    RowTraversal(int x1, int x2, int z1, int z2) {
+        super(x1, x2, z1, z2);
+    }
+
+    @Override
+    public boolean next() {
+        if (!started) {
+            started = true;
+            x = x1;
+            z = z1;
+            return x <= x2 && z <= z2;
+        }
+        if (x > x2) {
+            return false;
+        }
+        if (z < z2) {
+            z++;
+            return true;
+        }
+        z = z1;
+        x++;
+        return x <= x2;
+    }
+
+    @Override
+    public long skipPast(int lastX, int lastZ) {
+        if (lastX < x1 || lastX > x2 || lastZ < z1 || lastZ > z2) {
+            return 0;
+        }
+        started = true;
+        x = lastX;
+        z = lastZ;
+        return ((long) lastX - x1) * ((long) z2 - z1 + 1) + (lastZ - z1) + 1;
+    }
+
+}
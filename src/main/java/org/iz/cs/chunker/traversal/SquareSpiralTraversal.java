@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 Ivan Zhivkov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iz.cs.chunker.traversal;
+
+/**
+ * Square rings around the center. Ring n contains the chunks that are exactly n chunks away
+ * from the center along x or z, going clockwise around the perimeter.
+ */
+final class SquareSpiralTraversal extends RingTraversal {
+
+    private int edge;
+    private int offset;
+    private int edgeEnd;
+
+    SquareSpiralTraversal(int centerX, int centerZ, int x1, int x2, int z1, int z2) {
+        super(centerX, centerZ, x1, x2, z1, z2);
+    }
+
+    @Override
+    protected int ringOf(int dx, int dz) {
+        return Math.max(Math.abs(dx), Math.abs(dz));
+    }
+
+    @Override
+    protected boolean startRing() {
+        if (ring == 0) {
+            x = cx;
+            z = cz;
+            edge = 4;
+            offset = 0;
+            edgeEnd = 0;
+            return x >= x1 && x <= x2 && z >= z1 && z <= z2;
+        }
+        edge = 0;
+        return seek();
+    }
+
+    @Override
+    protected boolean advanceInRing() {
+        if (offset < edgeEnd) {
+            offset++;
+            position();
+            return true;
+        }
+        edge++;
+        return seek();
+    }
+
+    /**
+     * Finds the first edge, starting from the current one, that has chunks inside the area.
+     * Each edge has 2 * ring chunks, starting at a corner and going clockwise, and is clipped to the area
+     */
+    private boolean seek() {
+        long side = 2L * ring;
+        for (; edge < 4; edge++) {
+            // The coordinate that is the same along the edge, and the offsets of the edge inside the area
+            long fixed;
+            long from;
+            long to;
+            switch (edge) {
+            case 0:
+                fixed = (long) cz - ring;
+                from = x1 - ((long) cx - ring);
+                to = x2 - ((long) cx - ring);
+                break;
+            case 1:
+                fixed = (long) cx + ring;
+                from = z1 - ((long) cz - ring);
+                to = z2 - ((long) cz - ring);
+                break;
+            case 2:
+                fixed = (long) cz + ring;
+                from = ((long) cx + ring) - x2;
+                to = ((long) cx + ring) - x1;
+                break;
+            default:
+                fixed = (long) cx - ring;
+                from = ((long) cz + ring) - z2;
+                to = ((long) cz + ring) - z1;
+                break;
+            }
+            long min = edge % 2 == 0 ? z1 : x1;
+            long max = edge % 2 == 0 ? z2 : x2;
+            from = Math.max(from, 0);
+            to = Math.min(to, side - 1);
+            if (fixed >= min && fixed <= max && from <= to) {
+                offset = (int) from;
+                edgeEnd = (int) to;
+                position();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void position() {
+        switch (edge) {
+        case 0:
+            x = cx - ring + offset;
+            z = cz - ring;
+            break;
+        case 1:
+            x = cx + ring;
+            z = cz - ring + offset;
+            break;
+        case 2:
+            x = cx + ring - offset;
+            z = cz + ring;
+            break;
+        default:
+            x = cx - ring;
+            z = cz + ring - offset;
+            break;
+        }
+    }
+
+    @Override
+    protected long countBefore(int ring) {
+        if (ring <= 0) {
+            return 0;
+        }
+        long inner = ring - 1;
+        return overlap(cx - inner, cx + inner, x1, x2) * overlap(cz - inner, cz + inner, z1, z2);
+    }
+
+}